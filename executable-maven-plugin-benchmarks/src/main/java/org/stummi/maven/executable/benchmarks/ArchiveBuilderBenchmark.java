@@ -0,0 +1,80 @@
+package org.stummi.maven.executable.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.NioTarArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.UserData;
+
+/**
+ * Adding single files to a tar archive, from a physical file and from a
+ * stream. All files of an iteration go into the same archive, like the files
+ * of a layer do.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class ArchiveBuilderBenchmark {
+	@Param({ "4096", "67108864" })
+	public int fileSize;
+
+	private Path directory;
+	private Path file;
+	private byte[] content;
+	private ArchiveBuilder builder;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Fixtures.createTempDirectory();
+		file = directory.resolve("file");
+		Fixtures.writeFile(file, fileSize, 0);
+		content = Files.readAllBytes(file);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Fixtures.delete(directory);
+	}
+
+	@Setup(Level.Iteration)
+	public void openArchive() {
+		builder = new NioTarArchiveBuilder(new NullChannel(), new UserData(), 0);
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeArchive() throws IOException {
+		builder.close();
+	}
+
+	@Benchmark
+	public void putPhysicalFile(Throughput throughput) throws IOException {
+		builder.putPhysicalFile("file", file);
+		throughput.add(fileSize);
+	}
+
+	@Benchmark
+	public void putFile(Throughput throughput) throws IOException {
+		builder.putFile("file", content.length, new ByteArrayInputStream(content), false);
+		throughput.add(fileSize);
+	}
+}
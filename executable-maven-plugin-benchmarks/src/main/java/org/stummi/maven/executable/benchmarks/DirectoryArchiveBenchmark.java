@@ -0,0 +1,56 @@
+package org.stummi.maven.executable.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.NioTarArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.UserData;
+
+/**
+ * Adding a JRE like directory tree to a tar archive, without compression
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@State(Scope.Benchmark)
+public class DirectoryArchiveBenchmark {
+	private Path directory;
+	private Path jre;
+	private long jreSize;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Fixtures.createTempDirectory();
+		jre = Fixtures.createJreTree(directory);
+		jreSize = Fixtures.size(jre);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Fixtures.delete(directory);
+	}
+
+	@Benchmark
+	public void putPhysicalDirectoryRecursive(Throughput throughput) throws IOException {
+		try (ArchiveBuilder builder = new NioTarArchiveBuilder(new NullChannel(), new UserData(), 0)) {
+			builder.putPhysicalDirectoryRecursive("jre", jre);
+		}
+		throughput.add(jreSize);
+	}
+}
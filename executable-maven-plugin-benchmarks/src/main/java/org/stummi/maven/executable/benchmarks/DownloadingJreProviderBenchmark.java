@@ -0,0 +1,115 @@
+package org.stummi.maven.executable.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.stummi.maven.executable.ChecksumVerifier;
+import org.stummi.maven.executable.Checksums;
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.NioTarArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.UserData;
+import org.stummi.maven.executable.jreprovider.DownloadingJreProvider;
+
+/**
+ * Verifying and extracting a downloaded JRE archive. The archive is served
+ * from a local file URL and already in the download cache after the setup, so
+ * the numbers don't depend on the network. Throughput is given in MB of the
+ * compressed archive.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@State(Scope.Benchmark)
+public class DownloadingJreProviderBenchmark {
+	/**
+	 * comma separated checksum algorithms the archive is verified with
+	 */
+	@Param({ "sha-256", "sha-256,sha-512" })
+	public String algorithms;
+
+	private Path directory;
+	private Path archive;
+	private long archiveSize;
+	private Map<String, String> checksums;
+	private DownloadingJreProvider provider;
+	private MavenProject project;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, ReflectiveOperationException {
+		directory = Fixtures.createTempDirectory();
+		archive = directory.resolve("jdk.tar.gz");
+		Fixtures.createTarGz(Fixtures.createJreTree(directory), archive);
+		archiveSize = Files.size(archive);
+
+		checksums = new HashMap<>();
+		for (String algorithm : algorithms.split(",")) {
+			try (InputStream in = Files.newInputStream(archive)) {
+				byte[] buffer = new byte[64 * 1024];
+				MessageDigest digest = Checksums.newDigest(algorithm);
+				int readLen;
+				while ((readLen = in.read(buffer)) > 0) {
+					digest.update(buffer, 0, readLen);
+				}
+				checksums.put(algorithm, Checksums.toHex(digest.digest()));
+			}
+		}
+
+		provider = new DownloadingJreProvider();
+		Fixtures.configure(provider, "url", archive.toUri().toString());
+		Fixtures.configure(provider, "checksum", checksums);
+		Fixtures.configure(provider, "stripParts", 1);
+		Fixtures.configure(provider, "downloadDir", directory.resolve("downloads").toString());
+		project = Fixtures.project();
+		// fills the download cache
+		extract();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Fixtures.delete(directory);
+	}
+
+	@Benchmark
+	public void verifyChecksums(Throughput throughput) throws IOException {
+		ChecksumVerifier verifier = new ChecksumVerifier(checksums);
+		try (InputStream in = Files.newInputStream(archive)) {
+			verifier.update(in);
+		}
+		verifier.verify("archive");
+		throughput.add(archiveSize);
+	}
+
+	@Benchmark
+	public void addToArchive(Throughput throughput) throws IOException {
+		extract();
+		throughput.add(archiveSize);
+	}
+
+	private void extract() throws IOException {
+		try (ArchiveBuilder builder = new NioTarArchiveBuilder(new NullChannel(), new UserData(), 0)) {
+			provider.addToArchive(project, builder);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package org.stummi.maven.executable.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.stummi.maven.executable.Fingerprint;
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+import org.stummi.maven.executable.exebuilder.PosixExeBuilder;
+import org.stummi.maven.executable.jreprovider.JreProvider;
+
+/**
+ * Building a whole executable from an application and a JRE like directory
+ * tree, without the JRE layer cache, so the JRE gets compressed every time.
+ * Reports the size of the executable of each codec as well.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@State(Scope.Benchmark)
+public class ExeBuilderBenchmark {
+	@Param({ "none", "gzip", "xz", "zstd" })
+	public String codec;
+
+	private Path directory;
+	private Path jre;
+	private Path application;
+	private Path executable;
+	private long inputSize;
+	private MavenProject project;
+
+	/**
+	 * adds the generated tree, like the system JRE provider adds java.home
+	 */
+	private class FixtureJreProvider implements JreProvider {
+		@Override
+		public void addToArchive(MavenProject project, ArchiveBuilder builder) throws IOException {
+			builder.putPhysicalDirectoryRecursive("jre", jre);
+		}
+
+		@Override
+		public void fingerprint(MavenProject project, Fingerprint fingerprint) throws IOException {
+			fingerprint.putDirectory(jre);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Fixtures.createTempDirectory();
+		jre = Fixtures.createJreTree(directory);
+		application = directory.resolve("app.jar");
+		Fixtures.writeFile(application, 4 * 1024 * 1024, -1);
+		executable = directory.resolve("app");
+		inputSize = Fixtures.size(jre) + Fixtures.size(application);
+		project = Fixtures.project();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Fixtures.delete(directory);
+	}
+
+	@Benchmark
+	public void createExe(Throughput throughput, ExecutableSize size) throws IOException {
+		PosixExeBuilder exeBuilder = new PosixExeBuilder();
+		exeBuilder.setCodec(Fixtures.codec(codec));
+		exeBuilder.createExe(project, application, executable, new FixtureJreProvider(), "app.jar");
+		throughput.add(inputSize);
+		size.set(executable);
+	}
+}
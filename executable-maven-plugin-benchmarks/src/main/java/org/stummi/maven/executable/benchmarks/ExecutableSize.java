@@ -0,0 +1,36 @@
+package org.stummi.maven.executable.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.IterationParams;
+
+/**
+ * Reports the size of the executable a benchmark works with, so the
+ * {@code executableMegabytes} result compares the codecs by size next to
+ * their speed. JMH sums such counters over the measurement iterations, so
+ * each iteration reports its share of the size.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class ExecutableSize {
+	public double executableMegabytes;
+
+	private int iterations;
+
+	@Setup(Level.Iteration)
+	public void reset(IterationParams params) {
+		executableMegabytes = 0;
+		iterations = params.getCount();
+	}
+
+	void set(Path executable) throws IOException {
+		executableMegabytes = Files.size(executable) / (1024.0 * 1024.0) / iterations;
+	}
+}
@@ -0,0 +1,180 @@
+package org.stummi.maven.executable.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.nio.channels.Channels;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.maven.project.MavenProject;
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.NioTarArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.UserData;
+import org.stummi.maven.executable.compression.GzipCodec;
+import org.stummi.maven.executable.compression.NoneCodec;
+import org.stummi.maven.executable.compression.PayloadCodec;
+import org.stummi.maven.executable.compression.XzCodec;
+import org.stummi.maven.executable.compression.ZstdCodec;
+
+/**
+ * Generates the benchmark input data locally, so the benchmarks run offline
+ * and always on the same data. File contents are pseudo random words from a
+ * small vocabulary, which compress about as well as class files do.
+ */
+final class Fixtures {
+	private static final int VOCABULARY_SIZE = 512;
+
+	private Fixtures() {
+	}
+
+	static Path createTempDirectory() throws IOException {
+		return Files.createTempDirectory("executable-benchmark");
+	}
+
+	/**
+	 * creates a tree resembling a JRE image: a few executables, one large
+	 * modules file, native libraries of medium size and many small files
+	 *
+	 * @return the root of the tree, below the given directory
+	 */
+	static Path createJreTree(Path directory) throws IOException {
+		Path root = directory.resolve("jre");
+		long seed = 0;
+		for (String tool : new String[] { "java", "javac", "jar", "jlink", "jshell", "keytool", "jcmd", "jps" }) {
+			Path file = root.resolve("bin").resolve(tool);
+			writeFile(file, 16 * 1024, seed++);
+			Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rwxr-xr-x"));
+		}
+		writeFile(root.resolve("lib/modules"), 48 * 1024 * 1024, seed++);
+		for (int idx = 0; idx < 24; ++idx) {
+			writeFile(root.resolve("lib/libnative" + idx + ".so"), 64 * 1024 << (idx % 6), seed++);
+		}
+		for (int module = 0; module < 70; ++module) {
+			Path legal = root.resolve("legal/java.module" + module);
+			writeFile(legal.resolve("LICENSE"), 1024, seed++);
+			writeFile(legal.resolve("ASSEMBLY_EXCEPTION"), 512, seed++);
+			writeFile(legal.resolve("ADDITIONAL_LICENSE_INFO"), 2048 + module * 64, seed++);
+		}
+		for (int idx = 0; idx < 20; ++idx) {
+			writeFile(root.resolve("conf/security/policy/file" + idx + ".policy"), 4096, seed++);
+		}
+		writeFile(root.resolve("release"), 1024, seed++);
+		return root;
+	}
+
+	/**
+	 * writes a gzip compressed tar archive of the tree, with a top level
+	 * directory like JDK downloads have
+	 */
+	static void createTarGz(Path tree, Path archive) throws IOException {
+		try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(archive), 64 * 1024);
+				ArchiveBuilder builder = new NioTarArchiveBuilder(Channels.newChannel(out), new UserData(), 0)) {
+			builder.putPhysicalDirectoryRecursive("jdk", tree);
+		}
+	}
+
+	/**
+	 * writes a file of the given size with compressible, pseudo random content
+	 */
+	static void writeFile(Path file, long size, long seed) throws IOException {
+		Files.createDirectories(file.getParent());
+		Random random = new Random(seed);
+		byte[][] vocabulary = new byte[VOCABULARY_SIZE][];
+		for (int idx = 0; idx < VOCABULARY_SIZE; ++idx) {
+			vocabulary[idx] = new byte[3 + random.nextInt(10)];
+			random.nextBytes(vocabulary[idx]);
+		}
+
+		byte[] buffer = new byte[64 * 1024];
+		try (OutputStream out = Files.newOutputStream(file)) {
+			long remaining = size;
+			while (remaining > 0) {
+				int length = (int) Math.min(buffer.length, remaining);
+				int position = 0;
+				while (position < length) {
+					byte[] word = vocabulary[random.nextInt(VOCABULARY_SIZE)];
+					int wordLength = Math.min(word.length, length - position);
+					System.arraycopy(word, 0, buffer, position, wordLength);
+					position += wordLength;
+				}
+				out.write(buffer, 0, length);
+				remaining -= length;
+			}
+		}
+	}
+
+	/**
+	 * total size of all regular files below the given path
+	 */
+	static long size(Path path) throws IOException {
+		AtomicLong size = new AtomicLong();
+		try (Stream<Path> files = Files.walk(path)) {
+			files.filter(Files::isRegularFile).forEach(file -> size.addAndGet(file.toFile().length()));
+		}
+		return size.get();
+	}
+
+	static MavenProject project() {
+		MavenProject project = new MavenProject();
+		project.setGroupId("org.stummi.maven");
+		project.setArtifactId("benchmark");
+		project.setVersion("1.0");
+		project.setName("benchmark");
+		return project;
+	}
+
+	/**
+	 * sets a configuration field, like maven does for plugin parameters
+	 */
+	static void configure(Object target, String name, Object value) throws ReflectiveOperationException {
+		Field field = target.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(target, value);
+	}
+
+	/**
+	 * the payload codec of the given name, as used for codec parameters
+	 */
+	static PayloadCodec codec(String name) {
+		switch (name) {
+		case "none":
+			return new NoneCodec();
+		case "gzip":
+			return new GzipCodec();
+		case "xz":
+			return new XzCodec();
+		case "zstd":
+			return new ZstdCodec();
+		default:
+			throw new IllegalArgumentException("unknown codec: " + name);
+		}
+	}
+
+	static void delete(Path directory) throws IOException {
+		if (directory == null || !Files.exists(directory)) {
+			return;
+		}
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
@@ -0,0 +1,87 @@
+package org.stummi.maven.executable.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.project.MavenProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.stummi.maven.executable.Processes;
+import org.stummi.maven.executable.exebuilder.PosixExeBuilder;
+import org.stummi.maven.executable.jreprovider.SystemJreProvider;
+
+/**
+ * Extracting the payload of an executable bundling the full JRE running the
+ * benchmark, which is what a launch without the extraction cache spends most
+ * of its time on. Compares payloads compressed with the different codecs, and
+ * split into different numbers of shards, which the wrapper extracts
+ * concurrently. Reports the size of the executable of each codec as well, so
+ * the codecs can be compared by size and startup time over the same JRE.
+ * Codecs whose tool is not installed fail.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class LaunchBenchmark {
+	@Param({ "none", "gzip", "xz", "zstd" })
+	public String codec;
+
+	@Param({ "1", "4", "16" })
+	public int shards;
+
+	private Path directory;
+	private Path executable;
+	private Path extracted;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Fixtures.createTempDirectory();
+		Path application = directory.resolve("app.jar");
+		Fixtures.writeFile(application, 1024 * 1024, -1);
+		executable = directory.resolve("app");
+		MavenProject project = Fixtures.project();
+
+		PosixExeBuilder exeBuilder = new PosixExeBuilder();
+		exeBuilder.setCodec(Fixtures.codec(codec));
+		exeBuilder.setShards(shards);
+		exeBuilder.createExe(project, application, executable, new SystemJreProvider(), "app.jar");
+	}
+
+	@Setup(Level.Invocation)
+	public void createTarget() throws IOException {
+		extracted = Files.createDirectory(directory.resolve("extracted"));
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteTarget() throws IOException {
+		Fixtures.delete(extracted);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Fixtures.delete(directory);
+	}
+
+	@Benchmark
+	public void extract(ExecutableSize size) throws IOException {
+		size.set(executable);
+		Processes.run(Arrays.asList(executable.toString(), "--wrapper-extract", extracted.toString()));
+	}
+}
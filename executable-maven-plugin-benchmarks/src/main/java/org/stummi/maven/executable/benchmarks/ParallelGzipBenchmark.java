@@ -0,0 +1,68 @@
+package org.stummi.maven.executable.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.NioTarArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.UserData;
+import org.stummi.maven.executable.compression.ParallelGzipOutputStream;
+
+/**
+ * Compressing a tar archive of a JRE like tree with the block parallel gzip
+ * stream, to show how it scales with the number of compression threads. The
+ * archive is kept in memory, so only the compression is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@State(Scope.Benchmark)
+public class ParallelGzipBenchmark {
+	private static final int BLOCK_SIZE = 128 * 1024;
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	private byte[] tar;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		Path directory = Fixtures.createTempDirectory();
+		try {
+			Path jre = Fixtures.createJreTree(directory);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (ArchiveBuilder builder = new NioTarArchiveBuilder(Channels.newChannel(out), new UserData(), 0)) {
+				builder.putPhysicalDirectoryRecursive("jre", jre);
+			}
+			tar = out.toByteArray();
+		} finally {
+			Fixtures.delete(directory);
+		}
+	}
+
+	@Benchmark
+	public void compress(Throughput throughput) throws IOException {
+		try (OutputStream out = new ParallelGzipOutputStream(Channels.newOutputStream(new NullChannel()), threads, BLOCK_SIZE)) {
+			out.write(tar);
+		}
+		throughput.add(tar.length);
+	}
+}
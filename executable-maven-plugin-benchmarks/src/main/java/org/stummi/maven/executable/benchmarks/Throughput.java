@@ -0,0 +1,26 @@
+package org.stummi.maven.executable.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the data processed by a benchmark, which JMH reports per second, so
+ * the {@code megabytes} result is the throughput in MB/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+	public double megabytes;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		megabytes = 0;
+	}
+
+	void add(long bytes) {
+		megabytes += bytes / (1024.0 * 1024.0);
+	}
+}
@@ -1,21 +1,64 @@
 package org.stummi.maven.executable;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
+import org.apache.maven.artifact.Artifact;
 import org.apache.maven.model.Build;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
+import org.stummi.maven.executable.archiveBuilder.Deduplication;
+import org.stummi.maven.executable.archiveBuilder.UserData;
+import org.stummi.maven.executable.cds.CdsArchiveGenerator;
+import org.stummi.maven.executable.cds.ClassDataSharing;
+import org.stummi.maven.executable.compression.CompressionPolicy;
+import org.stummi.maven.executable.compression.CompressionPool;
+import org.stummi.maven.executable.compression.CompressionSettings;
+import org.stummi.maven.executable.compression.OneOfPayloadCodecs;
+import org.stummi.maven.executable.exebuilder.AbstractExeBuilder;
+import org.stummi.maven.executable.exebuilder.DeltaBuilder;
+import org.stummi.maven.executable.exebuilder.ExtractionCache;
+import org.stummi.maven.executable.exebuilder.LayerCache;
+import org.stummi.maven.executable.exebuilder.LayerCache.CachedLayer;
 import org.stummi.maven.executable.exebuilder.PosixExeBuilder;
+import org.stummi.maven.executable.exebuilder.RuntimeStore;
+import org.stummi.maven.executable.exebuilder.TemporaryExtraction;
+import org.stummi.maven.executable.jreprovider.JreFilter;
+import org.stummi.maven.executable.jreprovider.JreProvider;
 import org.stummi.maven.executable.jreprovider.OneOfJreProviders;
 
-@Mojo(name = "build-executable", defaultPhase = LifecyclePhase.PACKAGE)
+@Mojo(name = "build-executable", defaultPhase = LifecyclePhase.PACKAGE, requiresDependencyResolution = ResolutionScope.RUNTIME, threadSafe = true)
 public class BuildExecutableMojo extends AbstractMojo {
+	private static final Set<String> RUNTIME_SCOPES = new HashSet<>(Arrays.asList(Artifact.SCOPE_COMPILE, Artifact.SCOPE_RUNTIME));
+
 	@Parameter(readonly = true, defaultValue = "${project}")
 	private MavenProject mavenProject;
 
@@ -25,6 +68,12 @@ public class BuildExecutableMojo extends AbstractMojo {
 	@Parameter
 	private OneOfJreProviders jreProvider = OneOfJreProviders.system();
 
+	/**
+	 * files of the JRE to leave out of the executable, for any JRE provider
+	 */
+	@Parameter
+	private JreFilter jreFilter = new JreFilter();
+
 	@Parameter
 	private String target;
 
@@ -34,26 +83,494 @@ public class BuildExecutableMojo extends AbstractMojo {
 	@Parameter
 	private String runnableJarFile;
 
+	@Parameter
+	private ExtractionCache extractionCache = new ExtractionCache();
+
+	/**
+	 * share the extracted JRE with other executables bundling the same JRE,
+	 * through a machine wide store
+	 */
+	@Parameter
+	private RuntimeStore runtimeStore = new RuntimeStore();
+
+	/**
+	 * where the payload is extracted to on every launch, if the extraction
+	 * cache is disabled
+	 */
+	@Parameter
+	private TemporaryExtraction temporaryExtraction = new TemporaryExtraction();
+
+	@Parameter
+	private OneOfPayloadCodecs compression = OneOfPayloadCodecs.gzip();
+
+	/**
+	 * number of threads used to compress the payload, if supported by the
+	 * codec. Defaults to the number of available processors. The gzip codec
+	 * shares them between all shards and targets
+	 */
+	@Parameter(property = "executable.compressionThreads")
+	private int compressionThreads;
+
+	/**
+	 * size in bytes of the blocks the payload is split into by codecs
+	 * compressing in parallel
+	 */
+	@Parameter(property = "executable.compressionBlockSize", defaultValue = "131072")
+	private int compressionBlockSize;
+
+	/**
+	 * number of independently compressed archives the JRE and dependency
+	 * layers are split into. The executable extracts them concurrently, using
+	 * one decompressor per shard instead of a single one. At most 64
+	 */
+	@Parameter(property = "executable.shards", defaultValue = "1")
+	private int shards;
+
+	@Parameter
+	private UserData userData = new UserData();
+
+	/**
+	 * repack the application jar, and jars within the source directory, with
+	 * uncompressed entries. The payload gets compressed anyway, and compresses
+	 * better from the raw class files
+	 */
+	@Parameter(property = "executable.repackJars", defaultValue = "false")
+	private boolean repackJars;
+
+	/**
+	 * put the runtime dependencies of the project under lib/, into a layer
+	 * of their own, and launch the application with a class path instead of
+	 * {@code -jar}. The application jar then doesn't need to contain its
+	 * dependencies, and the compressed dependency layer is reused as long as
+	 * the dependencies don't change
+	 */
+	@Parameter(property = "executable.dependencyLayer", defaultValue = "false")
+	private boolean dependencyLayer;
+
+	/**
+	 * main class launched with the dependency layer, defaults to the
+	 * Main-Class of the application jar manifest
+	 */
+	@Parameter(property = "executable.mainClass")
+	private String mainClass;
+
+	/**
+	 * compress the dependencies once into a cached layer, which is copied
+	 * into the executable on following builds
+	 */
+	@Parameter(property = "executable.cacheDependencyLayer", defaultValue = "true")
+	private boolean cacheDependencyLayer;
+
+	/**
+	 * store files of identical content only once per layer, as links to the
+	 * first copy, and optionally keep symbolic links instead of following
+	 * them
+	 */
+	@Parameter
+	private Deduplication deduplication = new Deduplication();
+
+	/**
+	 * store files which are compressed already, like jars and jmods, as they
+	 * are instead of compressing them again
+	 */
+	@Parameter
+	private CompressionPolicy compressionPolicy = new CompressionPolicy();
+
+	@Parameter
+	private ClassDataSharing classDataSharing = new ClassDataSharing();
+
+	/**
+	 * directory for data shared between builds, like cached layers
+	 */
+	@Parameter(property = "executable.cacheDirectory", defaultValue = "${user.home}/.m2/executable-maven-plugin")
+	private String cacheDirectory;
+
+	/**
+	 * compress the JRE once into a cached layer, which is copied into the
+	 * executable on following builds instead of compressing the JRE again
+	 */
+	@Parameter(property = "executable.cacheJreLayer", defaultValue = "true")
+	private boolean cacheJreLayer;
+
+	/**
+	 * rebuild the executable, even if none of its inputs changed since the
+	 * last build
+	 */
+	@Parameter(property = "executable.force", defaultValue = "false")
+	private boolean force;
+
+	/**
+	 * timestamp for reproducible builds, either in ISO-8601 format or in
+	 * seconds since the epoch. Used as build time and as modification time of
+	 * archive entries not backed by a physical file, which otherwise get the
+	 * epoch itself
+	 */
+	@Parameter(defaultValue = "${project.build.outputTimestamp}")
+	private String outputTimestamp;
+
+	/**
+	 * previous version of the executable, e.g.
+	 * {@code ${settings.localRepository}/com/example/app/1.0/app-1.0}. If set,
+	 * a delta is created, from which the previous version rebuilds the new one
+	 * with {@code --wrapper-apply-delta}
+	 */
+	@Parameter(property = "executable.deltaBase")
+	private String deltaBase;
+
+	/**
+	 * file to write the delta to, defaults to the executable file name with a
+	 * {@code .delta} suffix
+	 */
+	@Parameter(property = "executable.deltaFile")
+	private String deltaFile;
+
+	/**
+	 * file the build report, with timings and sizes of the build, is written
+	 * to
+	 */
+	@Parameter(property = "executable.reportFile", defaultValue = "${project.build.directory}/executable-report.json")
+	private String reportFile;
+
+	/**
+	 * executables to build from the application, each with its own JRE,
+	 * instead of the single one configured by target, jreProvider and
+	 * jreFilter. The application layer is compressed only once for all of
+	 * them
+	 */
+	@Parameter
+	private List<ExecutableTarget> targets;
+
+	/**
+	 * number of targets built at the same time, defaults to the number of
+	 * available processors
+	 */
+	@Parameter(property = "executable.targetThreads")
+	private int targetThreads;
+
+	/**
+	 * threads compressing the payload of all targets
+	 */
+	private CompressionPool compressionPool;
+
 	@Override
 	public void execute() throws MojoExecutionException {
-		PosixExeBuilder exeBuilder = new PosixExeBuilder();
+		Long timestamp = parseOutputTimestamp();
+		if (shards < 1 || shards > AbstractExeBuilder.MAX_SHARDS) {
+			throw new MojoExecutionException("shards must be between 1 and " + AbstractExeBuilder.MAX_SHARDS);
+		}
+		if (runtimeStore.isEnabled() && !runtimeStore.getDirectory().startsWith("/")) {
+			throw new MojoExecutionException("the runtime store directory must be absolute: " + runtimeStore.getDirectory());
+		}
+		if (compressionPolicy.isEnabled() && compressionPolicy.getSampleSize() < 1) {
+			throw new MojoExecutionException("the sample size of the compression policy must be positive");
+		}
+		compressionPool = new CompressionPool(compressionThreads > 0 ? compressionThreads : Runtime.getRuntime().availableProcessors());
+		try {
+			buildTargets(timestamp);
+		} finally {
+			compressionPool.close();
+		}
+	}
 
-		Build build = mavenProject.getBuild();
-		String projectName = build.getFinalName();
-		Path buildPath = Paths.get(build.getDirectory());
+	private void buildTargets(Long timestamp) throws MojoExecutionException {
+		List<TargetBuild> builds = new ArrayList<>();
+		if (targets == null || targets.isEmpty()) {
+			builds.add(new TargetBuild(null, target, jreProvider.getProvider(), jreFilter, timestamp));
+		} else {
+			if (deltaBase != null) {
+				throw new MojoExecutionException("deltas are only supported for a single target");
+			}
+			for (ExecutableTarget t : targets) {
+				builds.add(new TargetBuild(t.getName(), t.getTarget(), t.getJreProvider().getProvider(),
+						t.getJreFilter() != null ? t.getJreFilter() : jreFilter, timestamp));
+			}
+		}
 
-		Path sourcePath = source != null ? Paths.get(source) : buildPath.resolve(projectName + ".jar");
-		Path targetPath = target != null ? Paths.get(target) : buildPath.resolve(exeBuilder.toPlatformSpecificBinaryName(projectName));
-		String jarFile = runnableJarFile != null ? runnableJarFile : sourcePath.getFileName().toString();
+		Path appLayerPath = Paths.get(mavenProject.getBuild().getDirectory(), "executable-app.layer");
+		try {
+			if (dependencyLayer) {
+				Map<String, Path> dependencies = dependencies();
+				String launchedClass = mainClass != null ? mainClass : manifestMainClass();
+				getLog().info("launching " + launchedClass + " with " + dependencies.size() + " dependencies");
+				for (TargetBuild build : builds) {
+					build.exeBuilder.setDependencies(dependencies);
+					build.exeBuilder.setMainClass(launchedClass);
+				}
+			}
 
-		getLog().info("creating executable file: " + targetPath);
+			List<TargetBuild> outdated = new ArrayList<>();
+			for (TargetBuild build : builds) {
+				if (build.isUpToDate()) {
+					getLog().info("executable file is up to date: " + build.targetPath);
+					createDelta(build.targetPath);
+				} else {
+					outdated.add(build);
+				}
+			}
 
-		try {
-			exeBuilder.createExe(mavenProject, sourcePath, targetPath, jreProvider.getProvider(), jarFile);
+			if (outdated.size() > 1) {
+				getLog().info("creating application layer shared by " + outdated.size() + " executables");
+				CachedLayer appLayer = outdated.get(0).exeBuilder.writeApplicationLayer(mavenProject, sourcePath(), appLayerPath);
+				outdated.forEach(build -> build.exeBuilder.setApplicationLayer(appLayer));
+			}
+			buildAll(outdated);
 		} catch (IOException e) {
 			throw new MojoExecutionException("Could not create exeuctable file", e);
+		} finally {
+			try {
+				Files.deleteIfExists(appLayerPath);
+			} catch (IOException e) {
+				getLog().warn("could not delete " + appLayerPath, e);
+			}
+		}
+	}
+
+	/**
+	 * builds the given targets on a pool of targetThreads threads
+	 */
+	private void buildAll(List<TargetBuild> builds) throws IOException {
+		if (builds.size() <= 1) {
+			for (TargetBuild build : builds) {
+				build.build();
+			}
+			return;
+		}
+
+		int threads = Math.min(builds.size(), targetThreads > 0 ? targetThreads : Runtime.getRuntime().availableProcessors());
+		AtomicInteger threadCounter = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "executable-target-" + threadCounter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (TargetBuild build : builds) {
+				futures.add(pool.submit(() -> {
+					build.build();
+					return null;
+				}));
+			}
+
+			// waits for all targets, so no executable is left half written
+			IOException failure = null;
+			for (Future<?> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					IOException cause = e.getCause() instanceof IOException ? (IOException) e.getCause()
+							: new IOException("failed to create executable", e.getCause());
+					if (failure == null) {
+						failure = cause;
+					} else {
+						failure.addSuppressed(cause);
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while creating executables");
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private Path sourcePath() {
+		Build build = mavenProject.getBuild();
+		return source != null ? Paths.get(source) : Paths.get(build.getDirectory(), build.getFinalName() + ".jar");
+	}
+
+	/**
+	 * the runtime dependencies of the project, in resolution order, by their
+	 * names in the dependency layer. Files of the same name are prefixed with
+	 * their group id
+	 */
+	private Map<String, Path> dependencies() throws IOException {
+		List<Artifact> artifacts = new ArrayList<>();
+		Map<String, Integer> fileNames = new HashMap<>();
+		@SuppressWarnings("unchecked")
+		Set<Artifact> resolved = mavenProject.getArtifacts();
+		for (Artifact artifact : resolved) {
+			if (!artifact.getArtifactHandler().isAddedToClasspath() || !RUNTIME_SCOPES.contains(artifact.getScope())) {
+				continue;
+			}
+			if (artifact.getFile() == null) {
+				throw new IOException("dependency not resolved: " + artifact);
+			}
+			artifacts.add(artifact);
+			fileNames.merge(artifact.getFile().getName(), 1, Integer::sum);
+		}
+
+		Map<String, Path> dependencies = new LinkedHashMap<>();
+		for (Artifact artifact : artifacts) {
+			String name = artifact.getFile().getName();
+			dependencies.put(fileNames.get(name) > 1 ? artifact.getGroupId() + "-" + name : name, artifact.getFile().toPath());
+		}
+		return dependencies;
+	}
+
+	private String manifestMainClass() throws IOException, MojoExecutionException {
+		Path sourcePath = sourcePath();
+		Manifest manifest;
+		if (Files.isDirectory(sourcePath)) {
+			Path manifestPath = sourcePath.resolve(JarFile.MANIFEST_NAME);
+			if (!Files.isRegularFile(manifestPath)) {
+				manifest = null;
+			} else {
+				try (InputStream in = Files.newInputStream(manifestPath)) {
+					manifest = new Manifest(in);
+				}
+			}
+		} else {
+			try (JarFile jar = new JarFile(sourcePath.toFile())) {
+				manifest = jar.getManifest();
+			}
+		}
+		String ret = manifest != null ? manifest.getMainAttributes().getValue(Attributes.Name.MAIN_CLASS) : null;
+		if (ret == null) {
+			throw new MojoExecutionException("no Main-Class in the manifest of " + sourcePath + ", configure the mainClass");
+		}
+		return ret;
+	}
+
+	private String jarFile() {
+		return runnableJarFile != null ? runnableJarFile : sourcePath().getFileName().toString();
+	}
+
+	/**
+	 * a single executable, with its own builder and build report
+	 */
+	private class TargetBuild {
+		private final JreProvider provider;
+		private final Path targetPath;
+		private final Path fingerprintPath;
+		private final Path reportPath;
+		private final Path cdsWorkDir;
+		private final BuildReport report = new BuildReport();
+		private final PosixExeBuilder exeBuilder = new PosixExeBuilder();
+		private Fingerprint fingerprint;
+
+		/**
+		 * @param name
+		 *            name of the target, or {@code null} for the single one
+		 */
+		TargetBuild(String name, String targetFile, JreProvider provider, JreFilter filter, Long timestamp) {
+			this.provider = provider;
+			exeBuilder.setReport(report);
+			exeBuilder.setExtractionCache(extractionCache);
+			exeBuilder.setRuntimeStore(runtimeStore);
+			exeBuilder.setTemporaryExtraction(temporaryExtraction);
+			exeBuilder.setCodec(compression.getCodec());
+			exeBuilder.setUserData(userData);
+			exeBuilder.setJreFilter(filter);
+			exeBuilder.setRepackJars(repackJars);
+			exeBuilder.setShards(shards);
+			exeBuilder.setDeduplication(deduplication);
+			exeBuilder.setCompressionPolicy(compressionPolicy);
+			exeBuilder.setOutputTimestamp(timestamp);
+			if (cacheJreLayer) {
+				exeBuilder.setJreLayerCache(new LayerCache(Paths.get(cacheDirectory, "layers")));
+			}
+			if (cacheDependencyLayer) {
+				exeBuilder.setDependencyLayerCache(new LayerCache(Paths.get(cacheDirectory, "layers")));
+			}
+			exeBuilder.setCompressionSettings(new CompressionSettings(compressionPool.getThreads(), compressionBlockSize, compressionPool));
+
+			Build build = mavenProject.getBuild();
+			Path buildPath = Paths.get(build.getDirectory());
+			String suffix = name != null ? "-" + name : "";
+			this.targetPath = targetFile != null ? Paths.get(targetFile) : buildPath.resolve(exeBuilder.toPlatformSpecificBinaryName(build.getFinalName() + suffix));
+			this.fingerprintPath = targetPath.resolveSibling(targetPath.getFileName() + ".fingerprint");
+			String reportName = reportFile.endsWith(".json") ? reportFile.substring(0, reportFile.length() - 5) + suffix + ".json" : reportFile + suffix;
+			this.reportPath = Paths.get(reportName);
+			this.cdsWorkDir = buildPath.resolve("cds" + suffix);
+		}
+
+		boolean isUpToDate() throws IOException {
+			long fingerprintStart = System.nanoTime();
+			Path sourcePath = sourcePath();
+			Fingerprint previous = Fingerprint.load(fingerprintPath);
+			fingerprint = new Fingerprint(previous);
+			fingerprint.putValue("pluginVersion", PluginVersion.PLUGIN_VERSION);
+			// covers changes of snapshot versions of this plugin
+			fingerprint.putFile(PluginVersion.pluginLocation());
+			fingerprint.putValue("project", mavenProject.getGroupId() + ":" + mavenProject.getArtifactId() + ":" + mavenProject.getVersion());
+			fingerprint.putValue("project.name", mavenProject.getName());
+			fingerprint.putValue("runnableJarFile", jarFile());
+			fingerprint.putValue("classDataSharing", classDataSharing);
+			if (Files.isDirectory(sourcePath)) {
+				fingerprint.putDirectory(sourcePath);
+			} else {
+				fingerprint.putFile(sourcePath);
+			}
+			exeBuilder.fingerprint(fingerprint);
+			provider.fingerprint(mavenProject, fingerprint);
+			report.addTime("fingerprint", System.nanoTime() - fingerprintStart);
+
+			return !force && previous != null && Files.exists(targetPath) && previous.matches(fingerprint);
+		}
+
+		void build() throws IOException {
+			Path sourcePath = sourcePath();
+			String jarFile = jarFile();
+
+			getLog().info("creating executable file: " + targetPath);
+			Files.deleteIfExists(fingerprintPath);
+			exeBuilder.setInputFingerprint(fingerprint);
+			exeBuilder.createExe(mavenProject, sourcePath, targetPath, provider, jarFile);
+
+			if (classDataSharing.isEnabled()) {
+				long cdsStart = System.nanoTime();
+				List<String> classPath = exeBuilder.getDependencies() != null ? exeBuilder.classPath(jarFile) : Collections.singletonList(jarFile);
+				Path cdsArchive = new CdsArchiveGenerator(classDataSharing).generate(targetPath, classPath, exeBuilder.getMainClass(), extractionCache.isEnabled(),
+						cdsWorkDir);
+				report.addTime("cds", System.nanoTime() - cdsStart);
+				if (cdsArchive != null) {
+					getLog().info("adding CDS archive to executable file: " + targetPath);
+					exeBuilder.setCdsArchive(cdsArchive);
+					exeBuilder.createExe(mavenProject, sourcePath, targetPath, provider, jarFile);
+				}
+			}
+			fingerprint.store(fingerprintPath);
+			report.time("delta", () -> createDelta(targetPath));
+
+			report.logSummary();
+			report.write(reportPath);
 		}
+	}
 
+	private void createDelta(Path targetPath) throws IOException {
+		if (deltaBase == null) {
+			return;
+		}
+		Path basePath = Paths.get(deltaBase);
+		Path deltaPath = deltaFile != null ? Paths.get(deltaFile) : targetPath.resolveSibling(targetPath.getFileName() + ".delta");
+		if (!Files.isRegularFile(basePath)) {
+			throw new IOException("previous version of the executable not found: " + basePath);
+		}
+		if (Files.isRegularFile(deltaPath) && Files.getLastModifiedTime(deltaPath).compareTo(Files.getLastModifiedTime(targetPath)) > 0
+				&& Files.getLastModifiedTime(deltaPath).compareTo(Files.getLastModifiedTime(basePath)) > 0) {
+			getLog().info("delta file is up to date: " + deltaPath);
+			return;
+		}
+		new DeltaBuilder(basePath, targetPath).write(deltaPath);
 	}
 
+	private Long parseOutputTimestamp() throws MojoExecutionException {
+		// a single character is used to disable an inherited timestamp
+		if (outputTimestamp == null || outputTimestamp.length() < 2) {
+			return null;
+		}
+		try {
+			if (outputTimestamp.chars().allMatch(Character::isDigit)) {
+				return Long.parseLong(outputTimestamp);
+			}
+			return OffsetDateTime.parse(outputTimestamp).toEpochSecond();
+		} catch (DateTimeParseException | NumberFormatException e) {
+			throw new MojoExecutionException("invalid outputTimestamp: " + outputTimestamp, e);
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,396 @@
+package org.stummi.maven.executable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects where time and bytes go while building an executable, to be
+ * written as JSON report and logged as summary.
+ * <p>
+ * Phases are named like {@code jre} or {@code jre.compression}. The time of a
+ * sub phase is included in the time of the phase before the dot. Compressed
+ * sizes of entries and directories are approximate, because compressors
+ * buffer data, but add up to the size of their layer.
+ */
+@Slf4j
+public class BuildReport {
+	private static final int LARGEST_ENTRIES = 20;
+
+	/**
+	 * entries are grouped by directories up to this depth
+	 */
+	private static final int DIRECTORY_DEPTH = 2;
+
+	@FunctionalInterface
+	public interface Phase {
+		void run() throws IOException;
+	}
+
+	@RequiredArgsConstructor
+	private static class Sizes {
+		private final String layer;
+		private final String name;
+		private long rawBytes;
+		private long compressedBytes;
+		private int entries;
+
+		private Map<String, Object> toJson() {
+			Map<String, Object> ret = new LinkedHashMap<>();
+			ret.put("layer", layer);
+			ret.put("name", name);
+			ret.put("rawBytes", rawBytes);
+			ret.put("compressedBytes", compressedBytes);
+			ret.put("ratio", ratio(compressedBytes, rawBytes));
+			if (entries > 0) {
+				ret.put("entries", entries);
+			}
+			return ret;
+		}
+	}
+
+	@RequiredArgsConstructor
+	private static class Layer {
+		private final String name;
+		private final long offset;
+		/**
+		 * {@code null} if the layer was taken from the layer cache
+		 */
+		private final Long rawBytes;
+		private final long compressedBytes;
+		private final String hash;
+		/**
+		 * uncompressed bytes of file content per shard, {@code null} if the
+		 * layer is not sharded or was taken from the layer cache
+		 */
+		private final List<Long> shardSizes;
+	}
+
+	@RequiredArgsConstructor
+	private static class Filtered {
+		private final String rule;
+		private final long files;
+		private final long bytes;
+	}
+
+	private final long startNanos = System.nanoTime();
+	private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+	private final List<Layer> layers = new ArrayList<>();
+	private final Map<String, Long> rawLayerBytes = new TreeMap<>();
+	private final Map<String, List<Long>> shardSizes = new TreeMap<>();
+	private final Map<String, Sizes> directories = new TreeMap<>();
+	private final PriorityQueue<Sizes> largestEntries = new PriorityQueue<>(Comparator.comparingLong((Sizes s) -> s.rawBytes));
+	private final List<Filtered> filtered = new ArrayList<>();
+	/**
+	 * files and bytes stored as links per layer
+	 */
+	private final Map<String, long[]> deduplicated = new TreeMap<>();
+	/**
+	 * files and bytes stored without compression per layer
+	 */
+	private final Map<String, long[]> stored = new TreeMap<>();
+	/**
+	 * {@code null} if no JRE filter was applied
+	 */
+	private Boolean filterDryRun;
+	private Path executable;
+	private long executableSize;
+	private String payloadHash;
+
+	/**
+	 * runs the given phase, adding its time to the phase
+	 */
+	public void time(String phase, Phase action) throws IOException {
+		long start = System.nanoTime();
+		try {
+			action.run();
+		} finally {
+			addTime(phase, System.nanoTime() - start);
+		}
+	}
+
+	public void addTime(String phase, long nanos) {
+		phaseNanos.merge(phase, nanos, Long::sum);
+	}
+
+	/**
+	 * drops the sizes of a previously built executable, when the executable is
+	 * built again
+	 */
+	public void startExecutable() {
+		layers.clear();
+		rawLayerBytes.clear();
+		shardSizes.clear();
+		deduplicated.clear();
+		stored.clear();
+		directories.clear();
+		largestEntries.clear();
+	}
+
+	/**
+	 * records the size of a layer's tar archive, when the layer is written
+	 */
+	public void setRawLayerSize(String name, long rawBytes) {
+		rawLayerBytes.put(name, rawBytes);
+	}
+
+	/**
+	 * records the uncompressed bytes put into each shard of a layer, when the
+	 * layer is written
+	 */
+	public void setShardSizes(String name, List<Long> sizes) {
+		shardSizes.put(name, new ArrayList<>(sizes));
+	}
+
+	/**
+	 * adds a layer of the payload. Layers without a raw size were taken from
+	 * the layer cache
+	 */
+	public void addLayer(String name, long offset, long compressedBytes, String hash) {
+		layers.add(new Layer(name, offset, rawLayerBytes.get(name), compressedBytes, hash, shardSizes.get(name)));
+	}
+
+	/**
+	 * adds an archive entry, with its size including the tar header
+	 */
+	public void addEntry(String layer, String name, long rawBytes, long compressedBytes) {
+		String directory = directory(name);
+		Sizes dirSizes = directories.computeIfAbsent(layer + ":" + directory, k -> new Sizes(layer, directory));
+		dirSizes.rawBytes += rawBytes;
+		dirSizes.compressedBytes += compressedBytes;
+		dirSizes.entries++;
+
+		Sizes entry = new Sizes(layer, name);
+		entry.rawBytes = rawBytes;
+		entry.compressedBytes = compressedBytes;
+		largestEntries.add(entry);
+		if (largestEntries.size() > LARGEST_ENTRIES) {
+			largestEntries.remove();
+		}
+	}
+
+	/**
+	 * drops the results of a previous JRE filter run, when the JRE is filtered
+	 * again
+	 */
+	public void startFilter(boolean dryRun) {
+		filtered.clear();
+		filterDryRun = dryRun;
+	}
+
+	/**
+	 * adds the files and bytes removed from the JRE by a filter rule, or which
+	 * would be removed in a dry run
+	 */
+	public void addFiltered(String rule, long files, long bytes) {
+		filtered.add(new Filtered(rule, files, bytes));
+	}
+
+	/**
+	 * adds the files of a layer stored as links to identical files, and
+	 * their content bytes
+	 */
+	public void addDeduplicated(String layer, long files, long bytes) {
+		long[] sizes = deduplicated.computeIfAbsent(layer, k -> new long[2]);
+		sizes[0] += files;
+		sizes[1] += bytes;
+	}
+
+	/**
+	 * adds the files of a layer stored without compression, as they are
+	 * compressed already, and their content bytes
+	 */
+	public void addStored(String layer, long files, long bytes) {
+		long[] sizes = stored.computeIfAbsent(layer, k -> new long[2]);
+		sizes[0] += files;
+		sizes[1] += bytes;
+	}
+
+	public void setExecutable(Path executable, String payloadHash) throws IOException {
+		this.executable = executable;
+		this.executableSize = Files.size(executable);
+		this.payloadHash = payloadHash;
+	}
+
+	private static String directory(String name) {
+		String[] parts = name.split("/");
+		if (parts.length <= 1) {
+			return name;
+		}
+		int depth = Math.min(DIRECTORY_DEPTH, parts.length - 1);
+		StringBuilder sb = new StringBuilder();
+		for (int idx = 0; idx < depth; ++idx) {
+			sb.append(parts[idx]).append('/');
+		}
+		return sb.toString();
+	}
+
+	public void write(Path file) throws IOException {
+		Map<String, Object> json = new LinkedHashMap<>();
+		json.put("executable", executable != null ? executable.toString() : null);
+		json.put("size", executableSize);
+		json.put("payloadHash", payloadHash);
+		json.put("durationMillis", millis(System.nanoTime() - startNanos));
+
+		Map<String, Object> phases = new LinkedHashMap<>();
+		phaseNanos.forEach((phase, nanos) -> phases.put(phase, millis(nanos)));
+		json.put("phaseMillis", phases);
+
+		json.put("layers", layers.stream().map(layer -> {
+			Map<String, Object> ret = new LinkedHashMap<>();
+			ret.put("name", layer.name);
+			ret.put("offset", layer.offset);
+			ret.put("rawBytes", layer.rawBytes);
+			ret.put("compressedBytes", layer.compressedBytes);
+			ret.put("ratio", layer.rawBytes != null ? ratio(layer.compressedBytes, layer.rawBytes) : null);
+			ret.put("hash", layer.hash);
+			ret.put("cached", layer.rawBytes == null);
+			if (layer.shardSizes != null) {
+				ret.put("shardRawBytes", layer.shardSizes);
+			}
+			return ret;
+		}).collect(Collectors.toList()));
+		json.put("directories", bySize(directories.values()).stream().map(Sizes::toJson).collect(Collectors.toList()));
+		json.put("largestEntries", bySize(largestEntries).stream().map(Sizes::toJson).collect(Collectors.toList()));
+		if (filterDryRun != null) {
+			Map<String, Object> jreFilter = new LinkedHashMap<>();
+			jreFilter.put("dryRun", filterDryRun);
+			jreFilter.put("rules", filtered.stream().map(f -> {
+				Map<String, Object> ret = new LinkedHashMap<>();
+				ret.put("rule", f.rule);
+				ret.put("files", f.files);
+				ret.put("bytes", f.bytes);
+				return ret;
+			}).collect(Collectors.toList()));
+			json.put("jreFilter", jreFilter);
+		}
+		if (!deduplicated.isEmpty()) {
+			json.put("deduplicated", deduplicated.entrySet().stream().map(e -> {
+				Map<String, Object> ret = new LinkedHashMap<>();
+				ret.put("layer", e.getKey());
+				ret.put("files", e.getValue()[0]);
+				ret.put("bytes", e.getValue()[1]);
+				return ret;
+			}).collect(Collectors.toList()));
+		}
+		if (!stored.isEmpty()) {
+			json.put("stored", stored.entrySet().stream().map(e -> {
+				Map<String, Object> ret = new LinkedHashMap<>();
+				ret.put("layer", e.getKey());
+				ret.put("files", e.getValue()[0]);
+				ret.put("bytes", e.getValue()[1]);
+				return ret;
+			}).collect(Collectors.toList()));
+		}
+
+		StringBuilder sb = new StringBuilder();
+		writeJson(sb, json, "");
+		sb.append('\n');
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	public void logSummary() {
+		log.info("build report:");
+		phaseNanos.forEach((phase, nanos) -> log.info(String.format("  %-24s %8d ms", phase, millis(nanos))));
+		for (Layer layer : layers) {
+			if (layer.rawBytes != null) {
+				log.info(String.format("  layer %-18s %12d bytes, %12d uncompressed (%s)", layer.name, layer.compressedBytes, layer.rawBytes,
+						percent(layer.compressedBytes, layer.rawBytes)));
+				if (layer.shardSizes != null) {
+					log.info(String.format("  %d shards of %s bytes uncompressed", layer.shardSizes.size(),
+							layer.shardSizes.stream().map(String::valueOf).collect(Collectors.joining(", "))));
+				}
+			} else {
+				log.info(String.format("  layer %-18s %12d bytes, cached", layer.name, layer.compressedBytes));
+			}
+		}
+		for (Sizes directory : bySize(directories.values()).subList(0, Math.min(10, directories.size()))) {
+			log.info(String.format("  %-24s %12d bytes, %12d uncompressed (%s)", directory.name, directory.compressedBytes, directory.rawBytes,
+					percent(directory.compressedBytes, directory.rawBytes)));
+		}
+		if (filterDryRun != null) {
+			String removed = filterDryRun ? "would be removed" : "removed";
+			for (Filtered f : filtered) {
+				log.info(String.format("  %-48s %6d files, %12d bytes %s", f.rule, f.files, f.bytes, removed));
+			}
+		}
+		deduplicated.forEach((layer, sizes) -> log.info(String.format("  layer %-18s %6d files, %12d bytes deduplicated", layer, sizes[0], sizes[1])));
+		stored.forEach((layer, sizes) -> log.info(String.format("  layer %-18s %6d files, %12d bytes stored uncompressed", layer, sizes[0], sizes[1])));
+	}
+
+	private static List<Sizes> bySize(Collection<Sizes> sizes) {
+		return sizes.stream().sorted(Comparator.comparingLong((Sizes s) -> s.rawBytes).reversed()).collect(Collectors.toList());
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	private static Double ratio(long compressed, long raw) {
+		return raw > 0 ? Math.round(compressed * 1000.0 / raw) / 1000.0 : null;
+	}
+
+	private static String percent(long compressed, long raw) {
+		return raw > 0 ? String.format(Locale.ROOT, "%.1f%%", compressed * 100.0 / raw) : "-";
+	}
+
+	private static void writeJson(StringBuilder sb, Object value, String indent) {
+		if (value instanceof Map) {
+			sb.append("{");
+			String separator = "\n";
+			for (Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+				sb.append(separator).append(indent).append("  ");
+				writeString(sb, e.getKey().toString());
+				sb.append(": ");
+				writeJson(sb, e.getValue(), indent + "  ");
+				separator = ",\n";
+			}
+			sb.append(((Map<?, ?>) value).isEmpty() ? "}" : "\n" + indent + "}");
+		} else if (value instanceof List) {
+			sb.append("[");
+			String separator = "\n";
+			for (Object element : (List<?>) value) {
+				sb.append(separator).append(indent).append("  ");
+				writeJson(sb, element, indent + "  ");
+				separator = ",\n";
+			}
+			sb.append(((List<?>) value).isEmpty() ? "]" : "\n" + indent + "]");
+		} else if (value instanceof String) {
+			writeString(sb, (String) value);
+		} else {
+			// numbers, booleans and null
+			sb.append(value);
+		}
+	}
+
+	private static void writeString(StringBuilder sb, String s) {
+		sb.append('"');
+		for (char c : s.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+}
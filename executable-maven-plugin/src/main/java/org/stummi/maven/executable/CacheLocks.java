@@ -0,0 +1,107 @@
+package org.stummi.maven.executable;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Exclusive locks on entries of caches shared between builds, held against
+ * other threads of this JVM, like the modules of a parallel reactor build, as
+ * well as against other processes
+ */
+@UtilityClass
+public class CacheLocks {
+	/**
+	 * file locks are held on behalf of the whole JVM, and taking one twice
+	 * fails instead of waiting, so threads wait for each other on these first
+	 */
+	private static final ConcurrentMap<Path, ReentrantLock> THREAD_LOCKS = new ConcurrentHashMap<>();
+
+	@FunctionalInterface
+	public interface LockedAction<T> {
+		T run() throws IOException;
+	}
+
+	/**
+	 * runs the given action while holding the lock on the given lock file,
+	 * which is created if necessary. Must not be nested for the same file
+	 */
+	public static <T> T withLock(Path lockFile, LockedAction<T> action) throws IOException {
+		Path key = lockFile.toAbsolutePath().normalize();
+		ReentrantLock threadLock = THREAD_LOCKS.computeIfAbsent(key, k -> new ReentrantLock());
+		threadLock.lock();
+		try {
+			while (true) {
+				try (FileChannel channel = FileChannel.open(key, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+					Object fileKey = fileKey(key);
+					try (FileLock lock = channel.lock()) {
+						if (isLockFile(key, fileKey)) {
+							return action.run();
+						}
+					}
+				}
+			}
+		} finally {
+			threadLock.unlock();
+		}
+	}
+
+	/**
+	 * like {@link #withLock(Path, LockedAction)}, but does not wait if the
+	 * lock is held by another thread or process, or the current thread
+	 * 
+	 * @return whether the action was run
+	 */
+	public static boolean tryWithLock(Path lockFile, LockedAction<?> action) throws IOException {
+		Path key = lockFile.toAbsolutePath().normalize();
+		ReentrantLock threadLock = THREAD_LOCKS.computeIfAbsent(key, k -> new ReentrantLock());
+		if (threadLock.isHeldByCurrentThread() || !threadLock.tryLock()) {
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(key, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			Object fileKey = fileKey(key);
+			try (FileLock lock = channel.tryLock()) {
+				if (lock == null || !isLockFile(key, fileKey)) {
+					return false;
+				}
+				action.run();
+				return true;
+			}
+		} finally {
+			threadLock.unlock();
+		}
+	}
+
+	/**
+	 * lock files may be removed together with the entry they protect, while
+	 * other processes wait for them, so after taking a lock it is checked that
+	 * the file locked is still the lock file
+	 */
+	private static boolean isLockFile(Path lockFile, Object lockedFileKey) throws IOException {
+		return lockedFileKey != null && lockedFileKey.equals(fileKey(lockFile));
+	}
+
+	/**
+	 * the identity of the file, like its inode, or {@code null} if it doesn't
+	 * exist. On file systems without file identities, any existing file
+	 * matches.
+	 */
+	private static Object fileKey(Path file) throws IOException {
+		try {
+			BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+			return attrs.fileKey() != null ? attrs.fileKey() : Boolean.TRUE;
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+}
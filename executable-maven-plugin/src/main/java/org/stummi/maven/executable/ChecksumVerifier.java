@@ -0,0 +1,148 @@
+package org.stummi.maven.executable;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import lombok.Getter;
+
+/**
+ * Calculates all expected checksums of some data in a single pass, while the
+ * data is read or written anyway, and verifies them afterwards.
+ */
+public class ChecksumVerifier {
+	private final Map<String, String> expected;
+	private final Map<String, MessageDigest> digests = new TreeMap<>();
+
+	/**
+	 * time spent calculating the checksums
+	 */
+	@Getter
+	private long nanos;
+
+	/**
+	 * @param expected
+	 *            checksums by algorithm name, may be {@code null}
+	 */
+	public ChecksumVerifier(Map<String, String> expected) throws IOException {
+		this.expected = expected != null ? new TreeMap<>(expected) : new TreeMap<>();
+		for (String algorithm : this.expected.keySet()) {
+			digests.put(algorithm, Checksums.newDigest(algorithm));
+		}
+	}
+
+	public void update(byte[] data, int off, int len) {
+		long start = System.nanoTime();
+		for (MessageDigest digest : digests.values()) {
+			digest.update(data, off, len);
+		}
+		nanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * reads the remaining data of the stream, without closing it
+	 */
+	public void update(InputStream in) throws IOException {
+		byte[] buffer = new byte[64 * 1024];
+		int readLen;
+		while ((readLen = in.read(buffer)) > 0) {
+			update(buffer, 0, readLen);
+		}
+	}
+
+	/**
+	 * returns a stream updating the checksums with all data read through it.
+	 * Closing the stream reads the remaining data first, so the checksums
+	 * always cover the whole input, even if the reader stopped early
+	 */
+	public InputStream wrap(InputStream in) {
+		return new FilterInputStream(in) {
+			private boolean closed;
+
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) {
+					update(new byte[] { (byte) b }, 0, 1);
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int readLen = super.read(b, off, len);
+				if (readLen > 0) {
+					update(b, off, readLen);
+				}
+				return readLen;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				// skipped data has to be checksummed as well
+				byte[] buffer = new byte[(int) Math.min(n, 64 * 1024)];
+				int readLen = read(buffer, 0, buffer.length);
+				return Math.max(readLen, 0);
+			}
+
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				try {
+					update(in);
+				} finally {
+					super.close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * returns a stream updating the checksums with all data written through it
+	 */
+	public OutputStream wrap(OutputStream out) {
+		return new FilterOutputStream(out) {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				update(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				update(b, off, len);
+			}
+		};
+	}
+
+	/**
+	 * compares the calculated checksums with the expected ones
+	 *
+	 * @param subject
+	 *            description of the data for the error message
+	 */
+	public void verify(String subject) throws IOException {
+		for (Entry<String, MessageDigest> e : digests.entrySet()) {
+			String calculatedSum = Checksums.toHex(e.getValue().digest());
+			String expectedSum = expected.get(e.getKey());
+			if (!calculatedSum.equalsIgnoreCase(expectedSum != null ? expectedSum.trim() : null)) {
+				throw new IOException(e.getKey() + " hashsum of " + subject + " " + calculatedSum + " does not equals expected (" + expectedSum + ")");
+			}
+		}
+	}
+}
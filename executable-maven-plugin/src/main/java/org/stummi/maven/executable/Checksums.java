@@ -0,0 +1,41 @@
+package org.stummi.maven.executable;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Helper methods for creating and formatting checksums
+ */
+@UtilityClass
+public class Checksums {
+
+	/**
+	 * creates a new {@link MessageDigest} for the given algorithm name (case
+	 * insensitive)
+	 */
+	public static MessageDigest newDigest(String algorithm) throws IOException {
+		try {
+			return MessageDigest.getInstance(algorithm.toUpperCase());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("unknown checksum algorhithm: " + algorithm, e);
+		}
+	}
+
+	/**
+	 * formats the given digest result as lower case hex string, padded with
+	 * leading zeroes
+	 */
+	public static String toHex(byte[] data) {
+		BigInteger bigInt = new BigInteger(1, data);
+		String hash = bigInt.toString(16);
+		StringBuilder sb = new StringBuilder();
+		for (int idx = 0; idx < (data.length * 2 - hash.length()); ++idx) {
+			sb.append("0");
+		}
+		return sb.append(hash).toString();
+	}
+}
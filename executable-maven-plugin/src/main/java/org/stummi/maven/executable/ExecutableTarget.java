@@ -0,0 +1,37 @@
+package org.stummi.maven.executable;
+
+import org.apache.maven.plugins.annotations.Parameter;
+import org.stummi.maven.executable.jreprovider.JreFilter;
+import org.stummi.maven.executable.jreprovider.OneOfJreProviders;
+
+import lombok.Getter;
+
+/**
+ * One of several executables built from the same application, each bundling
+ * its own JRE
+ */
+@Getter
+public class ExecutableTarget {
+	/**
+	 * appended to the file names of the executable and its build report
+	 */
+	@Parameter(required = true)
+	private String name;
+
+	/**
+	 * the executable file. Defaults to the final name of the project with the
+	 * target name appended
+	 */
+	@Parameter
+	private String target;
+
+	@Parameter
+	private OneOfJreProviders jreProvider = OneOfJreProviders.system();
+
+	/**
+	 * files of the JRE to leave out of the executable, defaults to the
+	 * jreFilter of the plugin configuration
+	 */
+	@Parameter
+	private JreFilter jreFilter;
+}
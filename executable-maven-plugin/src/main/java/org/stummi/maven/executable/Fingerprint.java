@@ -0,0 +1,204 @@
+package org.stummi.maven.executable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lombok.Value;
+
+/**
+ * Fingerprint of all inputs of an executable build, used to skip the build if
+ * nothing changed since the last one.
+ * <p>
+ * Files are identified by their content hash. To keep fingerprinting cheap,
+ * the hash of a file is taken from the previous fingerprint if its size and
+ * modification time did not change, and only calculated otherwise.
+ */
+public class Fingerprint {
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static final String VALUE_PREFIX = "value.";
+	private static final String FILE_PREFIX = "file.";
+	private static final String DIRECTORY_HASH = "directory";
+	private static final String MISSING_HASH = "missing";
+
+	@Value
+	private static class FileState {
+		private final long size;
+		private final long modified;
+		private final String hash;
+
+		static FileState parse(String s) {
+			String[] parts = s.split(":", 3);
+			return new FileState(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]);
+		}
+
+		String format() {
+			return size + ":" + modified + ":" + hash;
+		}
+	}
+
+	private final SortedMap<String, String> values = new TreeMap<>();
+	private final SortedMap<String, FileState> files = new TreeMap<>();
+	private final Fingerprint previous;
+
+	public Fingerprint() {
+		this(null);
+	}
+
+	/**
+	 * @param previous
+	 *            the fingerprint of the previous build to take unchanged file
+	 *            hashes from, may be {@code null}
+	 */
+	public Fingerprint(Fingerprint previous) {
+		this.previous = previous;
+	}
+
+	/**
+	 * Adds a configuration value. {@code null} values are recorded as well.
+	 */
+	public void putValue(String key, Object value) {
+		values.put(key, String.valueOf(value));
+	}
+
+	/**
+	 * Adds a physical file. Files which do not exist are recorded as missing.
+	 */
+	public void putFile(Path file) throws IOException {
+		String key = file.toAbsolutePath().normalize().toString();
+		if (!Files.exists(file)) {
+			files.put(key, new FileState(-1, -1, MISSING_HASH));
+			return;
+		}
+
+		BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+		if (attrs.isDirectory()) {
+			files.put(key, new FileState(-1, -1, DIRECTORY_HASH));
+			return;
+		}
+
+		long size = attrs.size();
+		long modified = attrs.lastModifiedTime().toMillis();
+		FileState previousState = previous != null ? previous.files.get(key) : null;
+		String hash;
+		if (previousState != null && previousState.getSize() == size && previousState.getModified() == modified) {
+			hash = previousState.getHash();
+		} else {
+			hash = hashFile(file);
+		}
+		files.put(key, new FileState(size, modified, hash));
+	}
+
+	/**
+	 * Recursively adds a physical directory with all its files, following
+	 * links like {@link org.stummi.maven.executable.archiveBuilder.ArchiveBuilder#putPhysicalDirectoryRecursive}
+	 */
+	public void putDirectory(Path dir) throws IOException {
+		try (Stream<Path> paths = Files.walk(dir, FileVisitOption.FOLLOW_LINKS)) {
+			for (Path path : (Iterable<Path>) paths::iterator) {
+				putFile(path);
+			}
+		}
+	}
+
+	/**
+	 * Adds the content of a class path resource, like a template
+	 */
+	public void putResource(String name, URL resource) throws IOException {
+		if (resource == null) {
+			throw new IOException("resource not found: " + name);
+		}
+		try (InputStream in = resource.openStream()) {
+			putValue("resource." + name, hash(in));
+		}
+	}
+
+	/**
+	 * returns true if both fingerprints describe the same inputs. Modification
+	 * times are not compared, only the content hashes.
+	 */
+	public boolean matches(Fingerprint other) {
+		return values.equals(other.values) && hashes().equals(other.hashes());
+	}
+
+	private Map<String, String> hashes() {
+		return files.entrySet().stream().collect(Collectors.toMap(Entry::getKey, e -> e.getValue().getHash()));
+	}
+
+	/**
+	 * a hash over all recorded inputs, suitable as a cache key
+	 */
+	public String digest() throws IOException {
+		MessageDigest digest = Checksums.newDigest(HASH_ALGORITHM);
+		for (Entry<String, String> e : values.entrySet()) {
+			digest.update((VALUE_PREFIX + e.getKey() + "=" + e.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+		}
+		for (Entry<String, FileState> e : files.entrySet()) {
+			digest.update((FILE_PREFIX + e.getKey() + "=" + e.getValue().getHash() + "\n").getBytes(StandardCharsets.UTF_8));
+		}
+		return Checksums.toHex(digest.digest());
+	}
+
+	public void store(Path path) throws IOException {
+		Properties props = new Properties();
+		values.forEach((k, v) -> props.setProperty(VALUE_PREFIX + k, v));
+		files.forEach((k, v) -> props.setProperty(FILE_PREFIX + k, v.format()));
+		try (OutputStream out = Files.newOutputStream(path)) {
+			props.store(out, "executable-maven-plugin input fingerprint");
+		}
+	}
+
+	/**
+	 * loads a stored fingerprint, or returns {@code null} if there is none
+	 */
+	public static Fingerprint load(Path path) throws IOException {
+		if (!Files.isRegularFile(path)) {
+			return null;
+		}
+		Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(path)) {
+			props.load(in);
+		}
+
+		Fingerprint ret = new Fingerprint();
+		for (String key : props.stringPropertyNames()) {
+			String value = props.getProperty(key);
+			if (key.startsWith(VALUE_PREFIX)) {
+				ret.values.put(key.substring(VALUE_PREFIX.length()), value);
+			} else if (key.startsWith(FILE_PREFIX)) {
+				ret.files.put(key.substring(FILE_PREFIX.length()), FileState.parse(value));
+			}
+		}
+		return ret;
+	}
+
+	private static String hashFile(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return hash(in);
+		}
+	}
+
+	private static String hash(InputStream in) throws IOException {
+		MessageDigest digest = Checksums.newDigest(HASH_ALGORITHM);
+		byte[] buffer = new byte[64 * 1024];
+		int readLen;
+		while ((readLen = in.read(buffer)) > 0) {
+			digest.update(buffer, 0, readLen);
+		}
+		return Checksums.toHex(digest.digest());
+	}
+}
@@ -0,0 +1,39 @@
+package org.stummi.maven.executable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Helper methods to inspect java installations
+ */
+@UtilityClass
+public class JavaVersions {
+	/**
+	 * returns the feature version (8, 11, 17, ...) of the JRE or JDK in the
+	 * given directory, as declared by its release file
+	 */
+	public static int featureVersion(Path javaHome) throws IOException {
+		Path releaseFile = javaHome.resolve("release");
+		if (!Files.isRegularFile(releaseFile)) {
+			// Java 8 JREs within a JDK have no release file
+			return 8;
+		}
+		Properties release = new Properties();
+		try (InputStream in = Files.newInputStream(releaseFile)) {
+			release.load(in);
+		}
+		String version = release.getProperty("JAVA_VERSION", "").replace("\"", "");
+		String[] parts = version.split("[._-]");
+		try {
+			int feature = Integer.parseInt(parts[0]);
+			return feature == 1 && parts.length > 1 ? Integer.parseInt(parts[1]) : feature;
+		} catch (NumberFormatException e) {
+			throw new IOException("cannot parse java version of " + javaHome + ": " + version, e);
+		}
+	}
+}
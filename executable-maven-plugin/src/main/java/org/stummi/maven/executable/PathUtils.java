@@ -0,0 +1,29 @@
+package org.stummi.maven.executable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Helper methods for file system operations
+ */
+@UtilityClass
+public class PathUtils {
+	/**
+	 * deletes the given file or directory with all its content, if it exists
+	 */
+	public static void deleteRecursive(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+		try (Stream<Path> paths = Files.walk(path)) {
+			for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(p);
+			}
+		}
+	}
+}
@@ -1,9 +1,13 @@
 package org.stummi.maven.executable;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import lombok.SneakyThrows;
 import lombok.experimental.UtilityClass;
@@ -16,6 +20,17 @@ public class PluginVersion {
 		PLUGIN_VERSION = loadPluginVersion();
 	}
 
+	/**
+	 * returns the jar file (or class directory) containing this plugin
+	 */
+	public static Path pluginLocation() throws IOException {
+		try {
+			return Paths.get(PluginVersion.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		} catch (URISyntaxException e) {
+			throw new IOException("cannot determine plugin location", e);
+		}
+	}
+
 	@SneakyThrows
 	private static String loadPluginVersion() {
 		try (InputStream in = BuildExecutableMojo.class.getResourceAsStream("/executable-maven-plugin-version")) {
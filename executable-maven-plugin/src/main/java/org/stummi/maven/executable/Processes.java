@@ -0,0 +1,85 @@
+package org.stummi.maven.executable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Value;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Helper methods for running external tools
+ */
+@Slf4j
+@UtilityClass
+public class Processes {
+
+	@Value
+	public static class Result {
+		private final int exitCode;
+		/**
+		 * stdout and stderr of the process
+		 */
+		private final String output;
+		private final long millis;
+	}
+
+	/**
+	 * runs the given command and fails if it does not exit successfully
+	 */
+	public static String run(List<String> cmd) throws IOException {
+		Result result = run(cmd, null, 0);
+		if (result.getExitCode() != 0) {
+			throw new IOException(cmd.get(0) + " failed with exit code " + result.getExitCode() + ":\n" + result.getOutput());
+		}
+		return result.getOutput();
+	}
+
+	/**
+	 * runs the given command
+	 * 
+	 * @param dir
+	 *            the working directory, or {@code null} for the current one
+	 * @param timeoutSeconds
+	 *            seconds after which the process is killed, or 0 to wait
+	 *            forever
+	 */
+	public static Result run(List<String> cmd, Path dir, long timeoutSeconds) throws IOException {
+		log.debug("running " + cmd);
+		Path outputFile = Files.createTempFile("executable-maven-plugin", ".out");
+		try {
+			ProcessBuilder pb = new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(outputFile.toFile());
+			if (dir != null) {
+				pb.directory(dir.toFile());
+			}
+
+			long start = System.nanoTime();
+			Process process = pb.start();
+			try {
+				if (timeoutSeconds > 0) {
+					if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+						throw new IOException(cmd.get(0) + " did not finish within " + timeoutSeconds + " seconds");
+					}
+				} else {
+					process.waitFor();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting for " + cmd.get(0));
+			} finally {
+				process.destroyForcibly();
+			}
+			long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			String output = new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8);
+			return new Result(process.exitValue(), output, millis);
+		} finally {
+			Files.deleteIfExists(outputFile);
+		}
+	}
+}
@@ -3,10 +3,8 @@ package org.stummi.maven.executable.archiveBuilder;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.EnumSet;
 
 public interface ArchiveBuilder extends Closeable {
 
@@ -41,8 +39,23 @@ public interface ArchiveBuilder extends Closeable {
 	 *            the physical path to put into the archive
 	 */
 	default void putPhysicalDirectoryRecursive(String destInArchive, Path path) throws IOException {
-		Files.walkFileTree(path, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
-				new ArchiveBuildingFileVisitor(this, destInArchive, path));
+		putPhysicalDirectoryRecursive(destInArchive, path, EntryFilter.ALL);
+	}
+
+	/**
+	 * Recursively puts the files and directories of a physical existing
+	 * directory accepted by the given filter in the archive
+	 * 
+	 * @param destInArchive
+	 *            the root path the directory gets within the archive.
+	 * 
+	 * @param path
+	 *            the physical path to put into the archive
+	 * @param filter
+	 *            the filter the entries below the root path have to pass
+	 */
+	default void putPhysicalDirectoryRecursive(String destInArchive, Path path, EntryFilter filter) throws IOException {
+		new ParallelDirectoryReader(this, destInArchive, path, filter).run();
 	}
 
 	/**
@@ -54,6 +67,44 @@ public interface ArchiveBuilder extends Closeable {
 	 *            the file to put into the archive
 	 * 
 	 */
-	void putPhysicalFile(String name, Path path) throws IOException;
+	default void putPhysicalFile(String name, Path path) throws IOException {
+		try (InputStream in = Files.newInputStream(path)) {
+			putPhysicalFile(name, path, in);
+		}
+	}
+
+	/**
+	 * Puts a physical existing file in the archive, with its content already
+	 * opened or read by the caller
+	 * 
+	 * @param name
+	 *            The name which the file should get in the archive
+	 * @param path
+	 *            the file to take the size and attributes from
+	 * @param content
+	 *            the content of the file
+	 */
+	void putPhysicalFile(String name, Path path, InputStream content) throws IOException;
+
+	/**
+	 * Puts a hard link to a file put into the archive before
+	 * 
+	 * @param name
+	 *            The name the link should have in the archive
+	 * @param target
+	 *            The name of the linked file in the archive
+	 */
+	void putHardLink(String name, String target) throws IOException;
+
+	/**
+	 * Puts a symbolic link into the archive
+	 * 
+	 * @param name
+	 *            The name the link should have in the archive
+	 * @param target
+	 *            The target of the link, relative to the directory containing
+	 *            the link
+	 */
+	void putSymbolicLink(String name, String target) throws IOException;
 
 }
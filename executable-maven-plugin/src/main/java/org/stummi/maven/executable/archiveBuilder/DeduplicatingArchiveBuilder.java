@@ -0,0 +1,203 @@
+package org.stummi.maven.executable.archiveBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.stummi.maven.executable.Checksums;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Puts physical files whose content was put into the archive before as links
+ * to the first copy, so every distinct file is compressed and extracted only
+ * once. Files of the same size and permissions are compared by their SHA-256
+ * hash, which is only calculated once a second file of the same size and
+ * permissions shows up.
+ * <p>
+ * A link gets the modification time of the first copy. Directories read by
+ * this builder optionally keep their symbolic links, see
+ * {@link Deduplication#isPreserveSymlinks()}.
+ */
+public class DeduplicatingArchiveBuilder implements ArchiveBuilder {
+	private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+	private final ArchiveBuilder builder;
+	private final Deduplication config;
+
+	/**
+	 * files put into the archive, by size and permissions
+	 */
+	private final Map<String, List<Stored>> stored = new HashMap<>();
+
+	/**
+	 * number of files put as links
+	 */
+	@Getter
+	private long files;
+
+	/**
+	 * content bytes of the files put as links
+	 */
+	@Getter
+	private long bytes;
+
+	@RequiredArgsConstructor
+	private static class Stored {
+		private final String name;
+		private final Path path;
+		private byte[] hash;
+
+		private byte[] hash() throws IOException {
+			if (hash == null) {
+				try (InputStream in = Files.newInputStream(path)) {
+					hash = DeduplicatingArchiveBuilder.hash(in);
+				}
+			}
+			return hash;
+		}
+	}
+
+	public DeduplicatingArchiveBuilder(ArchiveBuilder builder, Deduplication config) {
+		this.builder = builder;
+		this.config = config;
+	}
+
+	@Override
+	public void putDirectory(String name) throws IOException {
+		builder.putDirectory(name);
+	}
+
+	@Override
+	public void putFile(String name, long size, InputStream is, boolean executable) throws IOException {
+		// not backed by a file to hash it again later
+		builder.putFile(name, size, is, executable);
+	}
+
+	@Override
+	public void putPhysicalDirectoryRecursive(String destInArchive, Path path, EntryFilter filter) throws IOException {
+		new ParallelDirectoryReader(this, destInArchive, path, filter, config.isPreserveSymlinks()).run();
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path) throws IOException {
+		List<Stored> candidates = candidates(name, path);
+		if (candidates == null) {
+			builder.putPhysicalFile(name, path);
+			return;
+		}
+		Stored file = new Stored(name, path);
+		if (!link(file, candidates)) {
+			builder.putPhysicalFile(name, path);
+		}
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path, InputStream content) throws IOException {
+		List<Stored> candidates = candidates(name, path);
+		if (candidates == null) {
+			builder.putPhysicalFile(name, path, content);
+			return;
+		}
+		// the content may have been read ahead, and is hashed from memory
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		byte[] buffer = new byte[64 * 1024];
+		int readLen;
+		while ((readLen = content.read(buffer)) > 0) {
+			data.write(buffer, 0, readLen);
+		}
+		byte[] read = data.toByteArray();
+		Stored file = new Stored(name, path);
+		file.hash = hash(new ByteArrayInputStream(read));
+		if (!link(file, candidates)) {
+			builder.putPhysicalFile(name, path, new ByteArrayInputStream(read));
+		}
+	}
+
+	/**
+	 * returns the files already stored, which the given file could be a copy
+	 * of, or {@code null} if there are none. In the latter case, the file is
+	 * remembered as stored
+	 */
+	private List<Stored> candidates(String name, Path path) throws IOException {
+		if (!config.isEnabled()) {
+			return null;
+		}
+		BasicFileAttributes attrs = POSIX ? Files.readAttributes(path, PosixFileAttributes.class) : Files.readAttributes(path, BasicFileAttributes.class);
+		if (!attrs.isRegularFile() || attrs.size() == 0) {
+			return null;
+		}
+		String key = attrs.size() + (POSIX ? ":" + ((PosixFileAttributes) attrs).permissions() : ":" + Files.isExecutable(path));
+		List<Stored> candidates = stored.get(key);
+		if (candidates == null) {
+			candidates = new ArrayList<>();
+			candidates.add(new Stored(name, path));
+			stored.put(key, candidates);
+			return null;
+		}
+		return candidates;
+	}
+
+	/**
+	 * puts a link if the given file is a copy of one of the candidates,
+	 * otherwise remembers it as stored
+	 */
+	private boolean link(Stored file, List<Stored> candidates) throws IOException {
+		byte[] hash = file.hash();
+		for (Stored candidate : candidates) {
+			if (Arrays.equals(hash, candidate.hash())) {
+				if (config.isSymbolicLinks()) {
+					Path linkDir = Paths.get(file.name).getParent();
+					Path target = Paths.get(candidate.name);
+					builder.putSymbolicLink(file.name, (linkDir != null ? linkDir.relativize(target) : target).toString());
+				} else {
+					builder.putHardLink(file.name, candidate.name);
+				}
+				files++;
+				bytes += Files.size(file.path);
+				return true;
+			}
+		}
+		candidates.add(file);
+		return false;
+	}
+
+	private static byte[] hash(InputStream in) throws IOException {
+		MessageDigest digest = Checksums.newDigest("SHA-256");
+		byte[] buffer = new byte[64 * 1024];
+		int readLen;
+		while ((readLen = in.read(buffer)) > 0) {
+			digest.update(buffer, 0, readLen);
+		}
+		return digest.digest();
+	}
+
+	@Override
+	public void putHardLink(String name, String target) throws IOException {
+		builder.putHardLink(name, target);
+	}
+
+	@Override
+	public void putSymbolicLink(String name, String target) throws IOException {
+		builder.putSymbolicLink(name, target);
+	}
+
+	@Override
+	public void close() throws IOException {
+		builder.close();
+	}
+}
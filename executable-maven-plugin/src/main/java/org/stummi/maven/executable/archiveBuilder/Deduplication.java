@@ -0,0 +1,28 @@
+package org.stummi.maven.executable.archiveBuilder;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+import lombok.Data;
+
+/**
+ * Stores files of identical content only once per layer, see
+ * {@link DeduplicatingArchiveBuilder}
+ */
+@Data
+public class Deduplication {
+	@Parameter
+	private boolean enabled = false;
+
+	/**
+	 * link repeated files with relative symbolic links instead of hard links
+	 */
+	@Parameter
+	private boolean symbolicLinks = false;
+
+	/**
+	 * keep relative symbolic links within a directory as links instead of
+	 * following them
+	 */
+	@Parameter
+	private boolean preserveSymlinks = false;
+}
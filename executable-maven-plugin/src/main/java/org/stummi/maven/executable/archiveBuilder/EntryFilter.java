@@ -0,0 +1,26 @@
+package org.stummi.maven.executable.archiveBuilder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Decides which files and directories of a physical directory tree are put
+ * into an archive. Called concurrently by the threads listing the directories
+ */
+@FunctionalInterface
+public interface EntryFilter {
+	EntryFilter ALL = (name, path, attrs) -> true;
+
+	/**
+	 * @param name
+	 *            the name the entry would get in the archive
+	 * @param path
+	 *            the physical file or directory
+	 * @param attrs
+	 *            the attributes of the physical file or directory
+	 * @return whether the entry is put into the archive. Directories not
+	 *         accepted are not descended into
+	 */
+	boolean accepts(String name, Path path, BasicFileAttributes attrs) throws IOException;
+}
@@ -0,0 +1,331 @@
+package org.stummi.maven.executable.archiveBuilder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+
+/**
+ * Writes a tar archive to a {@link WritableByteChannel}. Headers are built in
+ * a reused direct buffer, and the content of physical files is transferred
+ * with {@link FileChannel#transferTo}, which avoids copying it through the
+ * java heap, or even into user space if the target is a file.
+ * <p>
+ * Entries are written in the POSIX ustar format. Names and link targets
+ * longer than ustar supports are written as GNU long name and long link
+ * entries.
+ * <p>
+ * Entries not backed by a physical file, which includes directories, get a
+ * fixed modification time, so archives of the same files are identical.
+ */
+public class NioTarArchiveBuilder implements ArchiveBuilder {
+	private static final int RECORD_SIZE = 512;
+	private static final boolean POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+	private static final int NAME_LENGTH = 100;
+	private static final int PREFIX_LENGTH = 155;
+	private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+	private static final byte TYPE_FILE = '0';
+	private static final byte TYPE_HARD_LINK = '1';
+	private static final byte TYPE_SYMBOLIC_LINK = '2';
+	private static final byte TYPE_DIRECTORY = '5';
+	private static final byte TYPE_GNU_LONG_LINK = 'K';
+	private static final byte TYPE_GNU_LONG_NAME = 'L';
+	private static final String GNU_LONG_NAME = "././@LongLink";
+
+	private final WritableByteChannel out;
+	private final UserData userData;
+	private final long entryTime;
+
+	private final ByteBuffer header = ByteBuffer.allocateDirect(RECORD_SIZE);
+	private final ByteBuffer padding = ByteBuffer.allocateDirect(RECORD_SIZE);
+	private final ByteBuffer copyBuffer = ByteBuffer.allocateDirect(64 * 1024);
+
+	/**
+	 * @param entryTime
+	 *            modification time in seconds since the epoch of entries not
+	 *            backed by a physical file
+	 */
+	public NioTarArchiveBuilder(WritableByteChannel out, UserData userData, long entryTime) {
+		this.out = out;
+		this.userData = userData;
+		this.entryTime = entryTime;
+	}
+
+	@Override
+	public void putDirectory(String name) throws IOException {
+		putHeader(name.endsWith("/") ? name : name + "/", TYPE_DIRECTORY, 0755, 0, entryTime);
+	}
+
+	@Override
+	public void putFile(String name, long size, InputStream is, boolean executable) throws IOException {
+		putHeader(name, TYPE_FILE, executable ? 0755 : 0644, size, entryTime);
+		copy(Channels.newChannel(is), size, name);
+		pad(size);
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path) throws IOException {
+		BasicFileAttributes attrs = putPhysicalHeader(name, path);
+		if (attrs.isDirectory()) {
+			return;
+		}
+
+		try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = attrs.size();
+			long position = 0;
+			while (position < size) {
+				long transferred = in.transferTo(position, size - position, out);
+				if (transferred <= 0) {
+					throw new IOException(path + " changed while adding it to the archive");
+				}
+				position += transferred;
+			}
+		}
+		pad(attrs.size());
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path, InputStream content) throws IOException {
+		BasicFileAttributes attrs = putPhysicalHeader(name, path);
+		if (attrs.isDirectory()) {
+			return;
+		}
+		copy(Channels.newChannel(content), attrs.size(), path.toString());
+		if (content.read() >= 0) {
+			throw new IOException(path + " changed while adding it to the archive");
+		}
+		pad(attrs.size());
+	}
+
+	private BasicFileAttributes putPhysicalHeader(String name, Path path) throws IOException {
+		BasicFileAttributes attrs;
+		int mode;
+		if (POSIX) {
+			PosixFileAttributes posixAttrs = Files.readAttributes(path, PosixFileAttributes.class);
+			attrs = posixAttrs;
+			mode = mode(posixAttrs.permissions());
+		} else {
+			attrs = Files.readAttributes(path, BasicFileAttributes.class);
+			mode = Files.isExecutable(path) ? 0755 : 0644;
+		}
+
+		long modified = attrs.lastModifiedTime().toMillis() / 1000;
+		if (attrs.isDirectory()) {
+			putHeader(name.endsWith("/") ? name : name + "/", TYPE_DIRECTORY, mode, 0, modified);
+		} else {
+			putHeader(name, TYPE_FILE, mode, attrs.size(), modified);
+		}
+		return attrs;
+	}
+
+	private static int mode(Set<PosixFilePermission> permissions) {
+		int mode = 0;
+		for (PosixFilePermission permission : permissions) {
+			// the enum constants are ordered like the mode bits, from 0400 to 01
+			mode |= 0400 >> permission.ordinal();
+		}
+		return mode;
+	}
+
+	@Override
+	public void putHardLink(String name, String target) throws IOException {
+		putHeader(name, TYPE_HARD_LINK, 0644, 0, entryTime, target);
+	}
+
+	@Override
+	public void putSymbolicLink(String name, String target) throws IOException {
+		putHeader(name, TYPE_SYMBOLIC_LINK, 0777, 0, entryTime, target);
+	}
+
+	private void putHeader(String name, byte type, int mode, long size, long modified) throws IOException {
+		putHeader(name, type, mode, size, modified, null);
+	}
+
+	private void putHeader(String name, byte type, int mode, long size, long modified, String linkName) throws IOException {
+		byte[] linkBytes = linkName != null ? linkName.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		if (linkBytes.length > NAME_LENGTH) {
+			putLongName(TYPE_GNU_LONG_LINK, linkBytes);
+			linkBytes = truncate(linkBytes, NAME_LENGTH);
+		}
+
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		int split = prefixSplit(nameBytes);
+		if (split < 0) {
+			// neither fits into the name field, nor can be split into prefix
+			// and name
+			putLongName(TYPE_GNU_LONG_NAME, nameBytes);
+			split = 0;
+			nameBytes = truncate(nameBytes, NAME_LENGTH);
+		}
+
+		header.clear();
+		while (header.hasRemaining()) {
+			header.put((byte) 0);
+		}
+		header.clear();
+
+		if (split > 0) {
+			putBytes(0, nameBytes, split + 1, nameBytes.length - split - 1);
+			putBytes(345, nameBytes, 0, split);
+		} else {
+			putBytes(0, nameBytes, 0, nameBytes.length);
+		}
+		putOctal(100, 8, mode);
+		putOctal(108, 8, userData.getUId());
+		putOctal(116, 8, userData.getGId());
+		if (size > MAX_OCTAL_SIZE) {
+			putBinary(124, 12, size);
+		} else {
+			putOctal(124, 12, size);
+		}
+		putOctal(136, 12, modified);
+		header.put(156, type);
+		putBytes(157, linkBytes, 0, linkBytes.length);
+		putBytes(257, "ustar\0".getBytes(StandardCharsets.US_ASCII), 0, 6);
+		putBytes(263, "00".getBytes(StandardCharsets.US_ASCII), 0, 2);
+		byte[] userName = truncate(userData.getUserName().getBytes(StandardCharsets.UTF_8), 31);
+		putBytes(265, userName, 0, userName.length);
+		byte[] groupName = truncate(userData.getGroupName().getBytes(StandardCharsets.UTF_8), 31);
+		putBytes(297, groupName, 0, groupName.length);
+
+		// the checksum is calculated with the checksum field set to spaces
+		for (int idx = 148; idx < 156; ++idx) {
+			header.put(idx, (byte) ' ');
+		}
+		long checksum = 0;
+		for (int idx = 0; idx < RECORD_SIZE; ++idx) {
+			checksum += header.get(idx) & 0xff;
+		}
+		putOctal(148, 7, checksum);
+
+		writeFully(header);
+	}
+
+	/**
+	 * writes a GNU entry holding the long name or link target of the
+	 * following entry
+	 */
+	private void putLongName(byte type, byte[] name) throws IOException {
+		putHeader(GNU_LONG_NAME, type, 0644, name.length + 1, 0);
+		writeFully(ByteBuffer.wrap(name));
+		writeFully(ByteBuffer.wrap(new byte[] { 0 }));
+		pad(name.length + 1);
+	}
+
+	/**
+	 * returns 0 if the name fits into the name field, the index of the slash
+	 * to split the name at into prefix and name, or -1 if it can't be split
+	 */
+	private static int prefixSplit(byte[] name) {
+		if (name.length <= NAME_LENGTH) {
+			return 0;
+		}
+		// the name part must not be empty, directory names end with a slash
+		for (int idx = Math.min(PREFIX_LENGTH, name.length - 2); idx > 0; --idx) {
+			if (name[idx] == '/' && name.length - idx - 1 <= NAME_LENGTH) {
+				return idx;
+			}
+		}
+		return -1;
+	}
+
+	private static byte[] truncate(byte[] data, int maxLength) {
+		if (data.length <= maxLength) {
+			return data;
+		}
+		byte[] ret = new byte[maxLength];
+		System.arraycopy(data, 0, ret, 0, maxLength);
+		return ret;
+	}
+
+	private void putBytes(int offset, byte[] data, int dataOffset, int length) {
+		for (int idx = 0; idx < length; ++idx) {
+			header.put(offset + idx, data[dataOffset + idx]);
+		}
+	}
+
+	/**
+	 * writes a zero padded, NUL terminated octal number
+	 */
+	private void putOctal(int offset, int length, long value) {
+		String octal = Long.toOctalString(value);
+		int digits = length - 1;
+		for (int idx = 0; idx < digits; ++idx) {
+			int octalIdx = octal.length() - digits + idx;
+			header.put(offset + idx, (byte) (octalIdx >= 0 ? octal.charAt(octalIdx) : '0'));
+		}
+		header.put(offset + digits, (byte) 0);
+	}
+
+	/**
+	 * writes a number in the GNU base-256 encoding, for sizes exceeding the
+	 * octal field
+	 */
+	private void putBinary(int offset, int length, long value) {
+		for (int idx = length - 1; idx > 0; --idx) {
+			header.put(offset + idx, (byte) value);
+			value >>>= 8;
+		}
+		header.put(offset, (byte) 0x80);
+	}
+
+	private void copy(ReadableByteChannel in, long size, String name) throws IOException {
+		long remaining = size;
+		while (remaining > 0) {
+			copyBuffer.clear();
+			if (remaining < copyBuffer.capacity()) {
+				copyBuffer.limit((int) remaining);
+			}
+			int readLen = in.read(copyBuffer);
+			if (readLen < 0) {
+				throw new EOFException("unexpected end of content of " + name);
+			}
+			copyBuffer.flip();
+			writeFully(copyBuffer);
+			remaining -= readLen;
+		}
+	}
+
+	private void pad(long size) throws IOException {
+		int paddingLength = (int) ((RECORD_SIZE - size % RECORD_SIZE) % RECORD_SIZE);
+		padding.clear();
+		padding.limit(paddingLength);
+		writeFully(padding);
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	/**
+	 * writes the end-of-archive records and closes the channel
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			for (int idx = 0; idx < 2; ++idx) {
+				padding.clear();
+				writeFully(padding);
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
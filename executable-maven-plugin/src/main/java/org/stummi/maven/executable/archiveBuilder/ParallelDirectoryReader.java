@@ -0,0 +1,266 @@
+package org.stummi.maven.executable.archiveBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Puts a physical directory tree into an {@link ArchiveBuilder}. Directories
+ * are listed and small files are read ahead on a thread pool, while the
+ * calling thread writes the entries to the builder one after another.
+ * <p>
+ * The entry order is deterministic: depth first, with the entries of every
+ * directory sorted by name. Memory used for read ahead file contents is
+ * bounded, larger files are streamed by the writing thread directly.
+ * <p>
+ * Symbolic links are followed, unless they are preserved. Only relative links
+ * staying within the tree are preserved, others would not resolve once the
+ * tree is extracted elsewhere.
+ */
+class ParallelDirectoryReader {
+	private static final int MAX_READ_AHEAD_FILE_SIZE = 4 * 1024 * 1024;
+	private static final long READ_AHEAD_MEMORY = 64 * 1024 * 1024;
+	private static final int MAX_PENDING_ENTRIES = 16 * 1024;
+	// small files are read in batches, to keep the overhead per file low
+	private static final int MAX_BATCH_FILES = 64;
+	private static final long MAX_BATCH_SIZE = 1024 * 1024;
+	private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+	private final ArchiveBuilder builder;
+	private final String prefix;
+	private final Path root;
+	private final EntryFilter filter;
+	private final boolean preserveSymlinks;
+	private final ExecutorService pool;
+
+	private final Deque<Entry> pending = new ArrayDeque<>();
+	private long pendingBytes;
+	private Batch currentBatch;
+
+	@RequiredArgsConstructor
+	private static class Entry {
+		private final Path path;
+		private final BasicFileAttributes attrs;
+		private final Entry parent;
+		/**
+		 * target of a preserved symbolic link
+		 */
+		private String linkTarget;
+		private Future<List<Entry>> children;
+		private Batch batch;
+		private int indexInBatch;
+	}
+
+	/**
+	 * files read ahead by a single task
+	 */
+	private static class Batch {
+		private final List<Path> paths = new ArrayList<>();
+		private long size;
+		private Future<List<byte[]>> contents;
+	}
+
+	ParallelDirectoryReader(ArchiveBuilder builder, String prefix, Path root, EntryFilter filter) {
+		this(builder, prefix, root, filter, false);
+	}
+
+	ParallelDirectoryReader(ArchiveBuilder builder, String prefix, Path root, EntryFilter filter, boolean preserveSymlinks) {
+		this.builder = builder;
+		this.prefix = prefix;
+		this.root = root;
+		this.filter = filter;
+		this.preserveSymlinks = preserveSymlinks;
+
+		// mostly waiting for I/O, so use more threads than processors
+		int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+		int poolNumber = POOL_COUNTER.incrementAndGet();
+		AtomicInteger threadCounter = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "executable-io-" + poolNumber + "-" + threadCounter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	void run() throws IOException {
+		try {
+			Entry rootEntry = new Entry(root, Files.readAttributes(root, BasicFileAttributes.class), null);
+			if (rootEntry.attrs.isDirectory()) {
+				rootEntry.children = pool.submit(() -> list(rootEntry));
+				visitDirectory(rootEntry);
+			} else {
+				enqueue(rootEntry);
+			}
+			while (!pending.isEmpty()) {
+				writeNext();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private void visitDirectory(Entry dir) throws IOException {
+		if (!name(dir).isEmpty()) {
+			// root directory for empty prefix
+			enqueue(dir);
+		}
+
+		List<Entry> children = get(dir.children);
+		// list all sub directories in parallel, before descending into the
+		// first one
+		for (Entry child : children) {
+			if (child.attrs.isDirectory()) {
+				child.children = pool.submit(() -> list(child));
+			}
+		}
+		for (Entry child : children) {
+			if (child.attrs.isDirectory()) {
+				visitDirectory(child);
+			} else {
+				enqueue(child);
+			}
+		}
+	}
+
+	private List<Entry> list(Entry dir) throws IOException {
+		List<Entry> ret = new ArrayList<>();
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(dir.path)) {
+			for (Path path : paths) {
+				BasicFileAttributes attrs = preserveSymlinks ? Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS) : null;
+				String linkTarget = attrs != null && attrs.isSymbolicLink() ? internalLinkTarget(path) : null;
+				if (linkTarget == null && (attrs == null || attrs.isSymbolicLink())) {
+					// follows links like Files.walkFileTree with FOLLOW_LINKS did
+					attrs = Files.readAttributes(path, BasicFileAttributes.class);
+				}
+				if (attrs.isDirectory()) {
+					checkLoop(path, attrs, dir);
+				}
+				Entry entry = new Entry(path, attrs, dir);
+				entry.linkTarget = linkTarget;
+				if (filter.accepts(name(entry), path, attrs)) {
+					ret.add(entry);
+				}
+			}
+		}
+		ret.sort(Comparator.comparing(e -> e.path.getFileName().toString()));
+		return ret;
+	}
+
+	/**
+	 * returns the target of the given symbolic link if it is relative and
+	 * stays within the root, {@code null} otherwise
+	 */
+	private String internalLinkTarget(Path link) throws IOException {
+		Path target = Files.readSymbolicLink(link);
+		if (target.isAbsolute()) {
+			return null;
+		}
+		Path resolved = link.toAbsolutePath().getParent().resolve(target).normalize();
+		return resolved.startsWith(root.toAbsolutePath().normalize()) ? target.toString() : null;
+	}
+
+	private static void checkLoop(Path path, BasicFileAttributes attrs, Entry parent) throws IOException {
+		for (Entry ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+			boolean same = attrs.fileKey() != null ? Objects.equals(attrs.fileKey(), ancestor.attrs.fileKey())
+					: Files.isSameFile(path, ancestor.path);
+			if (same) {
+				throw new FileSystemLoopException(path.toString());
+			}
+		}
+	}
+
+	private void enqueue(Entry entry) throws IOException {
+		long size = entry.attrs.isRegularFile() ? entry.attrs.size() : 0;
+		boolean readAhead = entry.attrs.isRegularFile() && size <= MAX_READ_AHEAD_FILE_SIZE;
+		while (!pending.isEmpty() && (pending.size() >= MAX_PENDING_ENTRIES || readAhead && pendingBytes + size > READ_AHEAD_MEMORY)) {
+			writeNext();
+		}
+		if (readAhead) {
+			if (currentBatch == null) {
+				currentBatch = new Batch();
+			}
+			entry.batch = currentBatch;
+			entry.indexInBatch = currentBatch.paths.size();
+			currentBatch.paths.add(entry.path);
+			currentBatch.size += size;
+			pendingBytes += size;
+			if (currentBatch.paths.size() >= MAX_BATCH_FILES || currentBatch.size >= MAX_BATCH_SIZE) {
+				submitBatch();
+			}
+		}
+		pending.add(entry);
+	}
+
+	private void submitBatch() {
+		Batch batch = currentBatch;
+		currentBatch = null;
+		batch.contents = pool.submit(() -> {
+			List<byte[]> ret = new ArrayList<>(batch.paths.size());
+			for (Path path : batch.paths) {
+				ret.add(Files.readAllBytes(path));
+			}
+			return ret;
+		});
+	}
+
+	private void writeNext() throws IOException {
+		Entry entry = pending.remove();
+		String name = name(entry);
+		if (entry.linkTarget != null) {
+			builder.putSymbolicLink(name, entry.linkTarget);
+		} else if (entry.attrs.isDirectory()) {
+			builder.putDirectory(name);
+		} else if (entry.batch != null) {
+			if (entry.batch == currentBatch) {
+				submitBatch();
+			}
+			byte[] content = get(entry.batch.contents).get(entry.indexInBatch);
+			pendingBytes -= entry.attrs.size();
+			try (InputStream in = new ByteArrayInputStream(content)) {
+				builder.putPhysicalFile(name, entry.path, in);
+			}
+		} else {
+			builder.putPhysicalFile(name, entry.path);
+		}
+	}
+
+	private String name(Entry entry) {
+		if (entry.path.equals(root)) {
+			return prefix;
+		}
+		return prefix + "/" + root.relativize(entry.path);
+	}
+
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while reading files", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("failed to read files", e.getCause());
+		}
+	}
+}
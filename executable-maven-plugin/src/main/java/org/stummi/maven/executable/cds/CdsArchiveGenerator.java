@@ -0,0 +1,157 @@
+package org.stummi.maven.executable.cds;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.stummi.maven.executable.JavaVersions;
+import org.stummi.maven.executable.PathUtils;
+import org.stummi.maven.executable.Processes;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates a class data sharing archive by running the application packaged in
+ * an executable with its bundled JRE.
+ * <p>
+ * The wrapper extracts the application to a different directory than the
+ * training run, so the archive is only usable by JVMs supporting relocated
+ * class paths, which is Java 19 or newer.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class CdsArchiveGenerator {
+	private static final int MIN_JAVA_VERSION = 19;
+
+	private final ClassDataSharing config;
+
+	/**
+	 * extracts the given executable into the working directory, runs the
+	 * training and returns the created archive, or {@code null} if the
+	 * bundled JRE does not support relocatable dynamic CDS archives
+	 * 
+	 * @param classPath
+	 *            class path relative to the extracted executable, starting
+	 *            with the application jar
+	 * @param mainClass
+	 *            main class to launch with the class path, or {@code null} to
+	 *            launch the application jar with {@code -jar}
+	 * @param separateLayers
+	 *            whether the wrapper extracts every layer into a directory of
+	 *            its own, as done by the extraction cache
+	 */
+	public Path generate(Path executable, List<String> classPath, String mainClass, boolean separateLayers, Path workDir) throws IOException {
+		PathUtils.deleteRecursive(workDir);
+		List<Path> layerDirs = extract(executable, separateLayers, workDir);
+		Path extracted = layerDirs.get(0);
+
+		Path jre = resolve(layerDirs, "jre");
+		Path java = jre.resolve("bin/java");
+		List<String> launch = new ArrayList<>();
+		if (mainClass != null) {
+			launch.add("-cp");
+			launch.add(classPath.stream() //
+					.map(entry -> resolve(layerDirs, entry).toString()) //
+					.collect(Collectors.joining(File.pathSeparator)));
+			launch.add(mainClass);
+		} else {
+			launch.add("-jar");
+			launch.add(resolve(layerDirs, classPath.get(0)).toString());
+		}
+		int javaVersion = JavaVersions.featureVersion(jre);
+		if (javaVersion < MIN_JAVA_VERSION) {
+			log.warn("relocatable class data sharing archives require Java " + MIN_JAVA_VERSION + " or newer, the bundled JRE is Java "
+					+ javaVersion + ". No CDS archive is created");
+			return null;
+		}
+
+		// dynamic archive of all classes loaded during the training run
+		Path archive = workDir.resolve("app.jsa").toAbsolutePath();
+		train(java, extracted, launch, "-XX:ArchiveClassesAtExit=" + archive);
+
+		if (!Files.isRegularFile(archive)) {
+			log.warn("training run did not create a CDS archive");
+			return null;
+		}
+		log.info("created CDS archive of " + Files.size(archive) + " bytes");
+
+		if (config.getMeasureRuns() > 0) {
+			long without = measure(java, extracted, launch, "-Xshare:auto");
+			long with = measure(java, extracted, launch, "-Xshare:auto", "-XX:SharedArchiveFile=" + archive);
+			log.info("startup time of the training run: " + without + " ms without, " + with + " ms with CDS archive");
+		}
+		return archive;
+	}
+
+	/**
+	 * extracts the executable into the working directory and returns the
+	 * directories of its layers. The JVM only accepts an archive for a class
+	 * path with the same layout as during training, so layers extracted into
+	 * directories of their own by the wrapper are extracted into directories
+	 * named like them
+	 */
+	private static List<Path> extract(Path executable, boolean separateLayers, Path workDir) throws IOException {
+		String exe = executable.toAbsolutePath().toString();
+		List<Path> ret = new ArrayList<>();
+		if (!separateLayers) {
+			Path extracted = workDir.resolve("extracted").toAbsolutePath();
+			Files.createDirectories(extracted);
+			Processes.run(Arrays.asList(exe, "--wrapper-extract", extracted.toString()));
+			ret.add(extracted);
+			return ret;
+		}
+		// skips the header line of the layer list
+		for (String line : Processes.run(Arrays.asList(exe, "--wrapper-list")).split("\n")) {
+			String[] columns = line.trim().split("\\s+");
+			if (columns.length != 3 || !columns[1].chars().allMatch(Character::isDigit)) {
+				continue;
+			}
+			Path layerDir = workDir.resolve("layer-" + columns[2]).toAbsolutePath();
+			Files.createDirectories(layerDir);
+			Processes.run(Arrays.asList(exe, "--wrapper-extract", layerDir.toString(), columns[0]));
+			ret.add(layerDir);
+		}
+		return ret;
+	}
+
+	/**
+	 * resolves a path of the payload against the layer containing it
+	 */
+	private static Path resolve(List<Path> layerDirs, String path) {
+		return layerDirs.stream().map(dir -> dir.resolve(path)).filter(Files::exists).findFirst().orElse(layerDirs.get(0).resolve(path));
+	}
+
+	private void train(Path java, Path dir, List<String> launch, String... jvmArgs) throws IOException {
+		Processes.Result result = Processes.run(command(java, launch, jvmArgs), dir, config.getTrainingTimeout());
+		log.debug("training run output:\n" + result.getOutput());
+		if (result.getExitCode() != 0) {
+			log.warn("training run exited with code " + result.getExitCode());
+		}
+	}
+
+	/**
+	 * returns the fastest of the configured number of runs in milliseconds
+	 */
+	private long measure(Path java, Path dir, List<String> launch, String... jvmArgs) throws IOException {
+		long best = Long.MAX_VALUE;
+		for (int run = 0; run < config.getMeasureRuns(); ++run) {
+			best = Math.min(best, Processes.run(command(java, launch, jvmArgs), dir, config.getTrainingTimeout()).getMillis());
+		}
+		return best;
+	}
+
+	private List<String> command(Path java, List<String> launch, String... jvmArgs) {
+		List<String> cmd = new ArrayList<>();
+		cmd.add(java.toString());
+		cmd.addAll(Arrays.asList(jvmArgs));
+		cmd.addAll(launch);
+		cmd.addAll(config.getTrainingArguments());
+		return cmd;
+	}
+}
@@ -0,0 +1,39 @@
+package org.stummi.maven.executable.cds;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+import lombok.Data;
+
+/**
+ * Configuration of the class data sharing archive generation. If enabled, the
+ * packaged application is run with the bundled JRE at build time, and the
+ * classes loaded during this training run are dumped into a CDS archive,
+ * which the wrapper passes to the JVM on launch.
+ */
+@Data
+public class ClassDataSharing {
+	@Parameter
+	private boolean enabled = false;
+
+	/**
+	 * application arguments for the training run
+	 */
+	@Parameter
+	private List<String> trainingArguments = new ArrayList<>();
+
+	/**
+	 * seconds after which the training run is aborted
+	 */
+	@Parameter
+	private int trainingTimeout = 300;
+
+	/**
+	 * number of runs with and without the archive to measure the startup
+	 * time. 0 disables the measurement
+	 */
+	@Parameter
+	private int measureRuns = 3;
+}
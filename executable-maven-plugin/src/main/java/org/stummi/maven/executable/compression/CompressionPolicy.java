@@ -0,0 +1,82 @@
+package org.stummi.maven.executable.compression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+import lombok.Data;
+
+/**
+ * Configuration of which files of a layer are stored instead of compressed.
+ * Compressing already compressed files, like jars or jmods, costs build time
+ * and time to decompress them at every launch, but hardly saves any space.
+ * <p>
+ * Files with one of the given extensions are stored, if a sample from their
+ * start looks compressed, which is a Shannon entropy of at least the given
+ * bits per byte. Jars repacked with uncompressed entries are therefore still
+ * compressed.
+ */
+@Data
+public class CompressionPolicy {
+	@Parameter
+	private boolean enabled = false;
+
+	/**
+	 * extensions of the files to sample, case insensitive. If empty, all files
+	 * are sampled
+	 */
+	@Parameter
+	private List<String> storedExtensions = new ArrayList<>(Arrays.asList("jar", "zip", "jmod", "war", "ear", "gz", "tgz", "xz", "bz2", "zst",
+			"7z", "png", "jpg", "jpeg", "gif", "webp", "woff", "woff2"));
+
+	/**
+	 * number of bytes sampled from the start of a file
+	 */
+	@Parameter
+	private int sampleSize = 4096;
+
+	/**
+	 * bits per byte from which a sample is considered compressed. Compressed
+	 * data is close to 8, text and code usually below 6
+	 */
+	@Parameter
+	private double minEntropy = 7.0;
+
+	/**
+	 * whether the file of the given name is to be sampled
+	 */
+	public boolean isCandidate(String name) {
+		if (storedExtensions.isEmpty()) {
+			return true;
+		}
+		int dot = name.lastIndexOf('.');
+		if (dot < 0 || dot < name.lastIndexOf('/')) {
+			return false;
+		}
+		String extension = name.substring(dot + 1);
+		return storedExtensions.stream().anyMatch(extension::equalsIgnoreCase);
+	}
+
+	/**
+	 * whether the given sample from the start of a file looks compressed
+	 */
+	public boolean isCompressed(byte[] sample, int length) {
+		if (length == 0) {
+			return false;
+		}
+		int[] counts = new int[256];
+		for (int idx = 0; idx < length; ++idx) {
+			counts[sample[idx] & 0xff]++;
+		}
+		double entropy = 0;
+		for (int count : counts) {
+			if (count > 0) {
+				double p = (double) count / length;
+				entropy -= p * Math.log(p) / Math.log(2);
+			}
+		}
+		return entropy >= minEntropy;
+	}
+}
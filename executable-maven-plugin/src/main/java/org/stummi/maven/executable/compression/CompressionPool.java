@@ -0,0 +1,147 @@
+package org.stummi.maven.executable.compression;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+
+/**
+ * Threads compressing blocks for all {@link ParallelGzipOutputStream}s of a
+ * build, like the shards of its layers and the layers of concurrently built
+ * executables, together with a limit of the blocks being compressed or
+ * waiting to be written by all of these streams.
+ * <p>
+ * Codecs compressing on threads of their own, like zstd, can't use the pool
+ * threads, but share the number of threads between their streams instead,
+ * see {@link #nativeWorkers()}.
+ */
+public class CompressionPool implements Closeable {
+	private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+	/**
+	 * how long a stream waits for a block before writing the completed
+	 * blocks of the other streams
+	 */
+	private static final long DRAIN_INTERVAL_MILLIS = 10;
+
+	@Getter
+	private final int threads;
+	private final ExecutorService executor;
+	private final Semaphore pendingBlocks;
+	private final Set<ParallelGzipOutputStream> streams = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger nativeStreams = new AtomicInteger();
+
+	/**
+	 * @param threads
+	 *            number of threads used for compression
+	 * @param maxPendingBlocks
+	 *            most blocks all streams together may have pending, each
+	 *            holding up to a block size of data
+	 */
+	public CompressionPool(int threads, int maxPendingBlocks) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		if (maxPendingBlocks < 1) {
+			throw new IllegalArgumentException("pending blocks must be positive: " + maxPendingBlocks);
+		}
+		this.threads = threads;
+		this.pendingBlocks = new Semaphore(maxPendingBlocks);
+
+		int pool = POOL_COUNTER.incrementAndGet();
+		AtomicInteger threadCounter = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "executable-gzip-" + pool + "-" + threadCounter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * allows some blocks to queue up, so the workers do not starve while a
+	 * stream waits for its oldest block
+	 */
+	public CompressionPool(int threads) {
+		this(threads, threads * 2);
+	}
+
+	<T> Future<T> submit(Callable<T> task) {
+		return executor.submit(task);
+	}
+
+	void register(ParallelGzipOutputStream stream) {
+		streams.add(stream);
+	}
+
+	void unregister(ParallelGzipOutputStream stream) {
+		streams.remove(stream);
+	}
+
+	/**
+	 * takes a pending block without waiting
+	 */
+	boolean tryAcquireBlock() {
+		return pendingBlocks.tryAcquire();
+	}
+
+	/**
+	 * waits for a pending block. Blocks are only given back when written, so
+	 * the completed blocks of streams not written to at the moment, like the
+	 * other shards of a layer, are written meanwhile
+	 */
+	void acquireBlock(ParallelGzipOutputStream requester) throws InterruptedIOException {
+		try {
+			while (!pendingBlocks.tryAcquire(DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+				for (ParallelGzipOutputStream stream : streams) {
+					if (stream != requester) {
+						stream.writeCompletedBlocks();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for compression");
+		}
+	}
+
+	void releaseBlock() {
+		pendingBlocks.release();
+	}
+
+	void registerNative() {
+		nativeStreams.incrementAndGet();
+	}
+
+	void unregisterNative() {
+		nativeStreams.decrementAndGet();
+	}
+
+	/**
+	 * number of worker threads a stream compressing on threads of its own
+	 * may start, which is the pool size divided by the number of such streams
+	 * currently open, like the shards of a layer and the layers of
+	 * concurrently built executables. Each stream gets at least one worker, so
+	 * it compresses while the next one is written to. Zero for a pool of one
+	 * thread, in which case streams compress on the writing thread.
+	 */
+	int nativeWorkers() {
+		if (threads == 1) {
+			return 0;
+		}
+		return Math.max(1, threads / Math.max(1, nativeStreams.get()));
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,26 @@
+package org.stummi.maven.executable.compression;
+
+import lombok.Value;
+
+/**
+ * Codec independent settings for compressing the payload
+ */
+@Value
+public class CompressionSettings {
+	/**
+	 * number of threads a codec may use
+	 */
+	private final int threads;
+
+	/**
+	 * size of the blocks the data is split into by codecs compressing blocks in
+	 * parallel
+	 */
+	private final int blockSize;
+
+	/**
+	 * pool shared by the parallel compressing streams of a build, or
+	 * {@code null} for a pool of the given threads per stream
+	 */
+	private final CompressionPool pool;
+}
@@ -0,0 +1,37 @@
+package org.stummi.maven.executable.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+import lombok.ToString;
+
+/**
+ * gzip codec. Compresses the payload in parallel, see
+ * {@link ParallelGzipOutputStream}
+ */
+@ToString
+public class GzipCodec implements PayloadCodec {
+	@Parameter
+	private int level = Deflater.DEFAULT_COMPRESSION;
+
+	@Override
+	public OutputStream compress(OutputStream out, CompressionSettings settings) throws IOException {
+		if (settings.getPool() != null) {
+			return new ParallelGzipOutputStream(out, settings.getPool(), settings.getBlockSize(), level);
+		}
+		return new ParallelGzipOutputStream(out, settings.getThreads(), settings.getBlockSize(), level);
+	}
+
+	@Override
+	public String getDecompressCommand() {
+		return "gzip -dc";
+	}
+
+	@Override
+	public String getRequiredTool() {
+		return "gzip";
+	}
+}
@@ -0,0 +1,33 @@
+package org.stummi.maven.executable.compression;
+
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+
+import lombok.ToString;
+
+/**
+ * Stores the payload uncompressed, for example if it is already compressed by
+ * a lower layer
+ */
+@ToString
+public class NoneCodec implements PayloadCodec {
+	@Override
+	public OutputStream compress(OutputStream out, CompressionSettings settings) {
+		return out;
+	}
+
+	@Override
+	public WritableByteChannel compress(WritableByteChannel out, CompressionSettings settings) {
+		return out;
+	}
+
+	@Override
+	public String getDecompressCommand() {
+		return "cat";
+	}
+
+	@Override
+	public String getRequiredTool() {
+		return null;
+	}
+}
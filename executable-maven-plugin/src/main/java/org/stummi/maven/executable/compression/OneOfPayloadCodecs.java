@@ -0,0 +1,51 @@
+package org.stummi.maven.executable.compression;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Helper class to make the payload codecs selectable with their own
+ * configuration options.
+ */
+public class OneOfPayloadCodecs {
+	@Parameter
+	private GzipCodec gzip;
+
+	@Parameter
+	private XzCodec xz;
+
+	@Parameter
+	private ZstdCodec zstd;
+
+	@Parameter
+	private NoneCodec none;
+
+	private static final List<Function<OneOfPayloadCodecs, PayloadCodec>> ACCESSORS = Arrays.asList( //
+			p -> p.gzip, //
+			p -> p.xz, //
+			p -> p.zstd, //
+			p -> p.none //
+	);
+
+	public PayloadCodec getCodec() {
+		Set<PayloadCodec> configuredCodecs = ACCESSORS.stream().map(f -> f.apply(this)).filter(t -> t != null).collect(Collectors.toSet());
+		if (configuredCodecs.isEmpty()) {
+			throw new IllegalArgumentException("no payload codec configured.");
+		} else if (configuredCodecs.size() > 1) {
+			throw new IllegalArgumentException("Multiple payload codecs configured");
+		} else {
+			return configuredCodecs.iterator().next();
+		}
+	}
+
+	public static OneOfPayloadCodecs gzip() {
+		OneOfPayloadCodecs ret = new OneOfPayloadCodecs();
+		ret.gzip = new GzipCodec();
+		return ret;
+	}
+}
@@ -0,0 +1,293 @@
+package org.stummi.maven.executable.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * {@link OutputStream} writing a single gzip stream, whose data is deflated in
+ * fixed size blocks on a thread pool, similar to pigz.
+ * <p>
+ * Each block is deflated as raw deflate data, using the last 32 KiB of the
+ * previous block as dictionary. All but the last block are terminated with a
+ * sync flush, so they end on a byte boundary and the concatenation of all
+ * blocks is one valid deflate stream, readable by any gzip implementation.
+ * <p>
+ * The blocks are deflated on a {@link CompressionPool}, which may be shared by
+ * several streams. Completed blocks of a stream may be written by another
+ * stream waiting for the pool, so streams must not be used by several threads
+ * at once.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+	/**
+	 * the deflate window size, which is the maximum useful dictionary size
+	 */
+	public static final int DICTIONARY_SIZE = 32 * 1024;
+
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+	private final OutputStream out;
+	private final int blockSize;
+	private final int level;
+	private final CompressionPool pool;
+	/**
+	 * whether the pool was created for this stream, and is closed with it
+	 */
+	private final boolean ownPool;
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+	private final CRC32 crc = new CRC32();
+	/**
+	 * held while the stream is written to, and while another stream writes
+	 * its completed blocks
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * failure of another stream writing the completed blocks of this one
+	 */
+	private IOException writeFailure;
+
+	private long uncompressedSize;
+	private byte[] previousBlock;
+	private byte[] block;
+	private int blockLength;
+	private boolean closed;
+
+	/**
+	 * @param out
+	 *            the stream the gzip data is written to
+	 * @param pool
+	 *            the pool compressing the blocks, which stays open when the
+	 *            stream is closed
+	 * @param blockSize
+	 *            size of the uncompressed blocks, at least
+	 *            {@link #DICTIONARY_SIZE}
+	 * @param level
+	 *            the deflate compression level
+	 */
+	public ParallelGzipOutputStream(OutputStream out, CompressionPool pool, int blockSize, int level) throws IOException {
+		this(out, pool, false, blockSize, level);
+	}
+
+	/**
+	 * @param out
+	 *            the stream the gzip data is written to
+	 * @param threads
+	 *            number of threads of a pool used by this stream only
+	 * @param blockSize
+	 *            size of the uncompressed blocks, at least
+	 *            {@link #DICTIONARY_SIZE}
+	 * @param level
+	 *            the deflate compression level
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize, int level) throws IOException {
+		this(out, new CompressionPool(threads), true, blockSize, level);
+	}
+
+	private ParallelGzipOutputStream(OutputStream out, CompressionPool pool, boolean ownPool, int blockSize, int level) throws IOException {
+		if (blockSize < DICTIONARY_SIZE) {
+			if (ownPool) {
+				pool.close();
+			}
+			throw new IllegalArgumentException("block size must be at least " + DICTIONARY_SIZE + ": " + blockSize);
+		}
+		this.out = out;
+		this.blockSize = blockSize;
+		this.level = level;
+		this.pool = pool;
+		this.ownPool = ownPool;
+
+		this.block = new byte[blockSize];
+		out.write(HEADER);
+		pool.register(this);
+	}
+
+	public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize) throws IOException {
+		this(out, threads, blockSize, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		lock.lock();
+		try {
+			checkWritable();
+			crc.update(b, off, len);
+			uncompressedSize += len;
+			while (len > 0) {
+				int copyLen = Math.min(len, blockSize - blockLength);
+				System.arraycopy(b, off, block, blockLength, copyLen);
+				blockLength += copyLen;
+				off += copyLen;
+				len -= copyLen;
+				if (blockLength == blockSize) {
+					submitBlock(false);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void checkWritable() throws IOException {
+		if (closed) {
+			throw new IOException("stream closed");
+		}
+		if (writeFailure != null) {
+			throw new IOException("failed to write compressed block", writeFailure);
+		}
+	}
+
+	private void submitBlock(boolean last) throws IOException {
+		// waiting for the own blocks first, which frees blocks of the pool
+		while (!pool.tryAcquireBlock()) {
+			if (pending.isEmpty()) {
+				pool.acquireBlock(this);
+				break;
+			}
+			writeNextBlock();
+		}
+
+		byte[] data = block;
+		int dataLength = blockLength;
+		byte[] dictionary = previousBlock;
+		try {
+			pending.add(pool.submit(() -> deflate(data, dataLength, dictionary, last, level)));
+		} catch (RuntimeException e) {
+			pool.releaseBlock();
+			throw e;
+		}
+
+		previousBlock = data;
+		block = last ? null : new byte[blockSize];
+		blockLength = 0;
+
+		while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+			writeNextBlock();
+		}
+	}
+
+	private void writeNextBlock() throws IOException {
+		Future<byte[]> next = pending.removeFirst();
+		try {
+			out.write(next.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while compressing");
+		} catch (ExecutionException e) {
+			throw new IOException("failed to compress block", e.getCause());
+		} finally {
+			pool.releaseBlock();
+		}
+	}
+
+	/**
+	 * writes the blocks compressed so far, unless the stream is in use, so
+	 * they don't hold blocks of the pool another stream waits for
+	 */
+	void writeCompletedBlocks() {
+		if (!lock.tryLock()) {
+			return;
+		}
+		try {
+			while (!closed && writeFailure == null && !pending.isEmpty() && pending.peekFirst().isDone()) {
+				writeNextBlock();
+			}
+		} catch (IOException e) {
+			writeFailure = e;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static byte[] deflate(byte[] data, int length, byte[] dictionary, boolean last, int level) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			if (dictionary != null) {
+				deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+			}
+			deflater.setInput(data, 0, length);
+			ByteArrayOutputStream result = new ByteArrayOutputStream(length / 2 + 64);
+			byte[] buffer = new byte[64 * 1024];
+			if (last) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					int len = deflater.deflate(buffer);
+					result.write(buffer, 0, len);
+				}
+			} else {
+				int len;
+				do {
+					len = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					result.write(buffer, 0, len);
+				} while (len == buffer.length);
+			}
+			return result.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		lock.lock();
+		try {
+			out.flush();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			try {
+				checkWritable();
+				submitBlock(true);
+				while (!pending.isEmpty()) {
+					writeNextBlock();
+				}
+				writeIntLE((int) crc.getValue());
+				writeIntLE((int) uncompressedSize);
+				out.close();
+			} finally {
+				closed = true;
+				pool.unregister(this);
+				// blocks left after a failure are given back to the pool
+				for (Future<byte[]> block : pending) {
+					block.cancel(true);
+					pool.releaseBlock();
+				}
+				pending.clear();
+				if (ownPool) {
+					pool.close();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void writeIntLE(int value) throws IOException {
+		out.write(value & 0xff);
+		out.write((value >> 8) & 0xff);
+		out.write((value >> 16) & 0xff);
+		out.write((value >> 24) & 0xff);
+	}
+}
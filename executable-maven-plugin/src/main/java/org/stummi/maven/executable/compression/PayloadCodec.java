@@ -0,0 +1,41 @@
+package org.stummi.maven.executable.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Interface for the codecs the payload of an executable can be compressed
+ * with. Each codec consists of the encoder used at build time and the shell
+ * command used by the wrapper script to decode the payload.
+ */
+public interface PayloadCodec {
+	/**
+	 * wraps the given stream into a stream compressing all data written to it.
+	 * Closing the returned stream finishes the compressed data and closes the
+	 * given stream.
+	 */
+	OutputStream compress(OutputStream out, CompressionSettings settings) throws IOException;
+
+	/**
+	 * like {@link #compress(OutputStream, CompressionSettings)}, but for
+	 * channels. Codecs not transforming the data return the given channel, so
+	 * file contents can be transferred into it without copying.
+	 */
+	default WritableByteChannel compress(WritableByteChannel out, CompressionSettings settings) throws IOException {
+		return Channels.newChannel(compress(Channels.newOutputStream(out), settings));
+	}
+
+	/**
+	 * the shell command which reads the compressed data from stdin and writes
+	 * the decompressed data to stdout
+	 */
+	String getDecompressCommand();
+
+	/**
+	 * the command which needs to exist on the target system to decompress the
+	 * payload, or {@code null} if none is needed
+	 */
+	String getRequiredTool();
+}
@@ -0,0 +1,60 @@
+package org.stummi.maven.executable.compression;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+/**
+ * zstd stream taking its share of the threads of a {@link CompressionPool}.
+ * <p>
+ * The number of workers is only chosen on the first write, as the shards of a
+ * layer are all opened before any of them is written to, and can't be changed
+ * afterwards.
+ */
+class PooledZstdOutputStream extends FilterOutputStream {
+	private final CompressionPool pool;
+	private boolean started;
+	private boolean closed;
+
+	PooledZstdOutputStream(OutputStream out, CompressionPool pool, int level) throws IOException {
+		super(new ZstdOutputStream(out, level));
+		this.pool = pool;
+		pool.registerNative();
+	}
+
+	private void start() throws IOException {
+		if (!started) {
+			started = true;
+			int workers = pool.nativeWorkers();
+			if (workers > 0) {
+				((ZstdOutputStream) out).setWorkers(workers);
+			}
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		start();
+		out.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		start();
+		out.write(b, off, len);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			try {
+				out.close();
+			} finally {
+				pool.unregisterNative();
+			}
+		}
+	}
+}
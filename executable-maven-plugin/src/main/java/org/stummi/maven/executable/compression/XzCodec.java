@@ -0,0 +1,34 @@
+package org.stummi.maven.executable.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.maven.plugins.annotations.Parameter;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import lombok.ToString;
+
+/**
+ * xz codec, for the smallest executables at the cost of build and startup time
+ */
+@ToString
+public class XzCodec implements PayloadCodec {
+	@Parameter
+	private int preset = LZMA2Options.PRESET_DEFAULT;
+
+	@Override
+	public OutputStream compress(OutputStream out, CompressionSettings settings) throws IOException {
+		return new XZOutputStream(out, new LZMA2Options(preset));
+	}
+
+	@Override
+	public String getDecompressCommand() {
+		return "xz -dc";
+	}
+
+	@Override
+	public String getRequiredTool() {
+		return "xz";
+	}
+}
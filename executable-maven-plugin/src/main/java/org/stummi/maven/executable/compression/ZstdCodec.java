@@ -0,0 +1,41 @@
+package org.stummi.maven.executable.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+import com.github.luben.zstd.ZstdOutputStream;
+
+import lombok.ToString;
+
+/**
+ * zstd codec, for fast decompression on startup
+ */
+@ToString
+public class ZstdCodec implements PayloadCodec {
+	@Parameter
+	private int level = 3;
+
+	@Override
+	public OutputStream compress(OutputStream out, CompressionSettings settings) throws IOException {
+		if (settings.getPool() != null) {
+			return new PooledZstdOutputStream(out, settings.getPool(), level);
+		}
+		ZstdOutputStream zos = new ZstdOutputStream(out, level);
+		if (settings.getThreads() > 1) {
+			zos.setWorkers(settings.getThreads());
+		}
+		return zos;
+	}
+
+	@Override
+	public String getDecompressCommand() {
+		return "zstd -dcq";
+	}
+
+	@Override
+	public String getRequiredTool() {
+		return "zstd";
+	}
+}
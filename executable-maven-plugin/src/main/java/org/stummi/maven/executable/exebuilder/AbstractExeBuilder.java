@@ -1,63 +1,670 @@
 package org.stummi.maven.executable.exebuilder;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.project.MavenProject;
+import org.stummi.maven.executable.BuildReport;
+import org.stummi.maven.executable.Checksums;
+import org.stummi.maven.executable.Fingerprint;
+import org.stummi.maven.executable.PluginVersion;
 import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.DeduplicatingArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.Deduplication;
+import org.stummi.maven.executable.archiveBuilder.NioTarArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.UserData;
+import org.stummi.maven.executable.compression.CompressionPolicy;
+import org.stummi.maven.executable.compression.CompressionSettings;
+import org.stummi.maven.executable.compression.GzipCodec;
+import org.stummi.maven.executable.compression.PayloadCodec;
+import org.stummi.maven.executable.exebuilder.LayerCache.CachedLayer;
+import org.stummi.maven.executable.exebuilder.LayerCache.LayerInfo;
+import org.stummi.maven.executable.jreprovider.JreFilter;
 import org.stummi.maven.executable.jreprovider.JreProvider;
 
 import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Synchronized;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 
 /**
- * Abstract superclass for ExeBuilder implementations. The class has state
- * interally but is thread safe due to synchronization
+ * Abstract superclass for ExeBuilder implementations. The state of a build is
+ * kept in a {@link BuildContext}, so executables can be built concurrently
+ * once the builder is configured.
  */
 @Getter(AccessLevel.PROTECTED)
 public abstract class AbstractExeBuilder implements ExeBuilder {
+	/**
+	 * algorithm used for layer and payload hashes
+	 */
+	protected static final String HASH_ALGORITHM = "SHA-256";
+
+	/**
+	 * version of the layer layout, to be increased whenever the content of
+	 * cached layers changes for the same inputs
+	 */
+	private static final int LAYER_FORMAT = 5;
+
+	/**
+	 * layers start at multiples of this, so the wrapper can skip to them
+	 * with a reasonable block size
+	 */
+	protected static final int LAYER_ALIGNMENT = 4096;
+
+	/**
+	 * most shards a layer can be split into, so the table of shards, and of
+	 * the stored archive, fits into the first block of the layer
+	 */
+	public static final int MAX_SHARDS = 64;
+
+	private static final String SHARD_TABLE_HEADER = "executable-shards 2";
+
+	protected static final String LAYER_APPLICATION = "app";
+	protected static final String LAYER_DEPENDENCIES = "lib";
+	protected static final String LAYER_RESOURCES = "resources";
+	protected static final String LAYER_JRE = "jre";
+
+	/**
+	 * name of the class data sharing archive within the payload
+	 */
+	protected static final String CDS_ARCHIVE_NAME = "app.jsa";
+
+	@Setter
+	private PayloadCodec codec = new GzipCodec();
+
+	@Setter
+	private UserData userData = new UserData();
+
+	@Setter
+	private CompressionSettings compressionSettings = new CompressionSettings(Runtime.getRuntime().availableProcessors(), 128 * 1024, null);
+
+	/**
+	 * cache for the compressed JRE layer, or {@code null} to compress the JRE
+	 * on every build
+	 */
+	@Setter
+	private LayerCache jreLayerCache;
+
+	/**
+	 * fingerprint of the build inputs, to reuse file hashes from when
+	 * calculating cache keys. May be {@code null}
+	 */
+	@Setter
+	private Fingerprint inputFingerprint;
+
+	/**
+	 * timestamp in seconds since the epoch for reproducible builds, used as
+	 * modification time of archive entries not backed by a physical file. May
+	 * be {@code null}, in which case the epoch itself is used for them
+	 */
+	@Setter
+	private Long outputTimestamp;
+
+	/**
+	 * collects timings and sizes of the build
+	 */
+	@Setter
+	private BuildReport report = new BuildReport();
+
+	/**
+	 * repack jars of the application with uncompressed entries
+	 */
+	@Setter
+	private boolean repackJars;
+
+	/**
+	 * files left out of the JRE layer
+	 */
+	@Setter
+	private JreFilter jreFilter = new JreFilter();
+
+	/**
+	 * stores repeated files of a layer as links
+	 */
+	@Setter
+	private Deduplication deduplication = new Deduplication();
+
+	/**
+	 * number of independently compressed archives the JRE and dependency
+	 * layers are split into, for the wrapper to extract them concurrently.
+	 * At most {@link #MAX_SHARDS}
+	 */
+	@Setter
+	private int shards = 1;
 
-	private MavenProject mavenProject;
-	private Path source;
-	private Path out;
-	private JreProvider provider;
-	private String executableJar;
+	/**
+	 * files of a layer which are stored instead of compressed
+	 */
+	@Setter
+	private CompressionPolicy compressionPolicy = new CompressionPolicy();
+
+	/**
+	 * compressed application layer shared by several executables of the same
+	 * application, or {@code null} to compress the application for every
+	 * executable
+	 */
+	@Setter
+	private CachedLayer applicationLayer;
+
+	/**
+	 * runtime dependencies of the application, by their file names within
+	 * the dependency layer, in class path order. If set, they are put into
+	 * the dependency layer and the application is launched with a class path
+	 * instead of {@code -jar}. May be {@code null}
+	 */
+	@Getter
+	@Setter
+	private Map<String, Path> dependencies;
+
+	/**
+	 * main class for class path launches, required if dependencies are set
+	 */
+	@Getter
+	@Setter
+	private String mainClass;
+
+	/**
+	 * cache for the compressed dependency layer, or {@code null} to compress
+	 * the dependencies on every build
+	 */
+	@Setter
+	private LayerCache dependencyLayerCache;
+
+	/**
+	 * class data sharing archive to add to the payload, may be {@code null}
+	 */
+	@Setter
+	private Path cdsArchive;
+
+	/**
+	 * Writes the content of a payload layer
+	 */
+	@FunctionalInterface
+	private interface LayerContent {
+		void writeTo(ArchiveBuilder builder) throws IOException;
+	}
+
+	/**
+	 * An archive of a layer, written to a temporary file
+	 */
+	@RequiredArgsConstructor
+	private static class LayerArchive {
+		private final Path file;
+		private final boolean stored;
+		private final MeteredChannel raw;
+		private final MeteredChannel compressed;
+	}
 
 	@Override
-	@Synchronized
 	public void createExe(MavenProject mavenProject, Path source, Path out, JreProvider provider, String executableJarFilename) throws IOException {
-		this.mavenProject = mavenProject;
-		this.source = source;
-		this.out = out;
-		this.provider = provider;
-		this.executableJar = executableJarFilename;
+		long buildTime = outputTimestamp != null ? outputTimestamp : System.currentTimeMillis() / 1000;
+		BuildContext context = new BuildContext(mavenProject, source, out, provider, executableJarFilename, buildTime);
+
+		List<String> layerNames = new ArrayList<>();
+		layerNames.add(LAYER_APPLICATION);
+		if (dependencies != null) {
+			layerNames.add(LAYER_DEPENDENCIES);
+		}
+		if (cdsArchive != null) {
+			layerNames.add(LAYER_RESOURCES);
+		}
+		layerNames.add(LAYER_JRE);
 
+		// The payload consists of independent layers, each a compressed tar
+		// archive of its own, which are listed in the table of contents
+		report.startExecutable();
+		List<PayloadLayer> layers = new ArrayList<>();
 		try (SeekableByteChannel channel = Files.newByteChannel(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
-				StandardOpenOption.TRUNCATE_EXISTING); ArchiveBuilder archiveBuilder = createExecutableBase(channel)) {
-			if (Files.isDirectory(source)) {
-				archiveBuilder.putPhysicalDirectoryRecursive("", source);
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			createExecutableBase(context, channel, layerNames);
+
+			report.time(LAYER_APPLICATION, () -> layers.add(applicationLayer != null ? appendLayer(channel, LAYER_APPLICATION, applicationLayer)
+					: writeLayer(mavenProject, channel, LAYER_APPLICATION, applicationContent(mavenProject, source))));
+
+			if (dependencies != null) {
+				LayerContent dependencyContent = dependencyContent(mavenProject);
+				report.time(LAYER_DEPENDENCIES, () -> {
+					if (dependencyLayerCache != null) {
+						CachedLayer dependencyLayer = dependencyLayerCache.get(dependencyLayerKey(),
+								os -> writeLayer(mavenProject, os, LAYER_DEPENDENCIES, dependencyContent));
+						layers.add(appendLayer(channel, LAYER_DEPENDENCIES, dependencyLayer));
+					} else {
+						layers.add(writeLayer(mavenProject, channel, LAYER_DEPENDENCIES, dependencyContent));
+					}
+				});
+			}
+
+			if (cdsArchive != null) {
+				report.time(LAYER_RESOURCES,
+						() -> layers.add(writeLayer(mavenProject, channel, LAYER_RESOURCES, archiveBuilder -> archiveBuilder.putPhysicalFile(CDS_ARCHIVE_NAME, cdsArchive))));
+			}
+
+			// filtered first, so left out files are not hashed. The content
+			// hash sees links instead of repeated files
+			LayerContent jreContent = layerBuilder -> {
+				ContentHashingArchiveBuilder hashingBuilder = isRuntimeHashed() ? new ContentHashingArchiveBuilder(layerBuilder) : null;
+				writeDeduplicated(LAYER_JRE, hashingBuilder != null ? hashingBuilder : layerBuilder, archiveBuilder -> {
+					if (jreFilter.isEnabled()) {
+						FilteringArchiveBuilder filteringBuilder = new FilteringArchiveBuilder(archiveBuilder, jreFilter);
+						provider.addToArchive(mavenProject, filteringBuilder, report);
+						filteringBuilder.addTo(report);
+					} else {
+						provider.addToArchive(mavenProject, archiveBuilder, report);
+					}
+				});
+				if (hashingBuilder != null) {
+					context.setRuntimeHash(hashingBuilder.digest());
+				}
+			};
+			report.time(LAYER_JRE, () -> {
+				// a cached layer would not be filtered again to report on
+				if (jreLayerCache != null && !(jreFilter.isEnabled() && jreFilter.isDryRun())) {
+					CachedLayer jreLayer = jreLayerCache.get(jreLayerKey(context), os -> {
+						LayerInfo info = writeLayer(mavenProject, os, LAYER_JRE, jreContent);
+						return new LayerInfo(info.getRawSize(), info.getShards(), context.getRuntimeHash());
+					});
+					if (isRuntimeHashed()) {
+						if (jreLayer.getInfo().getContentHash() == null) {
+							throw new IOException("cached JRE layer " + jreLayer.getPath() + " has no content hash");
+						}
+						context.setRuntimeHash(jreLayer.getInfo().getContentHash());
+					}
+					layers.add(appendLayer(channel, LAYER_JRE, jreLayer));
+				} else {
+					layers.add(writeLayer(mavenProject, channel, LAYER_JRE, jreContent));
+				}
+			});
+		}
+
+		MessageDigest payloadDigest = Checksums.newDigest(HASH_ALGORITHM);
+		for (PayloadLayer layer : layers) {
+			payloadDigest.update((layer.getName() + ":" + layer.getHash() + "\n").getBytes(StandardCharsets.US_ASCII));
+			report.addLayer(layer.getName(), layer.getOffset(), layer.getLength(), layer.getHash());
+		}
+		String payloadHash = Checksums.toHex(payloadDigest.digest());
+		afterExecutableBuilt(context, payloadHash, layers);
+		report.setExecutable(out, payloadHash);
+	}
+
+	/**
+	 * compresses the application layer into the given file, to be shared by
+	 * several executables with {@link #setApplicationLayer(CachedLayer)}
+	 */
+	public CachedLayer writeApplicationLayer(MavenProject mavenProject, Path source, Path file) throws IOException {
+		MessageDigest digest = Checksums.newDigest(HASH_ALGORITHM);
+		long start = System.nanoTime();
+		LayerInfo info;
+		try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			info = writeLayer(mavenProject, new DigestingChannel(out, digest), LAYER_APPLICATION, applicationContent(mavenProject, source));
+		} finally {
+			report.addTime(LAYER_APPLICATION, System.nanoTime() - start);
+		}
+		return new CachedLayer(file, Files.size(file), Checksums.toHex(digest.digest()), info);
+	}
+
+	private LayerContent applicationContent(MavenProject mavenProject, Path source) {
+		return layerBuilder -> {
+			ArchiveBuilder archiveBuilder = repackJars
+					? new RepackingArchiveBuilder(layerBuilder, Paths.get(mavenProject.getBuild().getDirectory(), "executable-repack"))
+					: layerBuilder;
+			// jars are compared before they are repacked
+			writeDeduplicated(LAYER_APPLICATION, archiveBuilder, deduplicatingBuilder -> {
+				if (Files.isDirectory(source)) {
+					deduplicatingBuilder.putPhysicalDirectoryRecursive("", source);
+				} else {
+					deduplicatingBuilder.putPhysicalFile(source.getFileName().toString(), source);
+				}
+			});
+		};
+	}
+
+	private LayerContent dependencyContent(MavenProject mavenProject) {
+		return layerBuilder -> {
+			ArchiveBuilder archiveBuilder = repackJars
+					? new RepackingArchiveBuilder(layerBuilder, Paths.get(mavenProject.getBuild().getDirectory(), "executable-repack"))
+					: layerBuilder;
+			writeDeduplicated(LAYER_DEPENDENCIES, archiveBuilder, deduplicatingBuilder -> {
+				deduplicatingBuilder.putDirectory(LAYER_DEPENDENCIES + "/");
+				for (Map.Entry<String, Path> dependency : dependencies.entrySet()) {
+					String name = LAYER_DEPENDENCIES + "/" + dependency.getKey();
+					if (Files.isDirectory(dependency.getValue())) {
+						deduplicatingBuilder.putPhysicalDirectoryRecursive(name + "/", dependency.getValue());
+					} else {
+						deduplicatingBuilder.putPhysicalFile(name, dependency.getValue());
+					}
+				}
+			});
+		};
+	}
+
+	/**
+	 * class path of class path launches, relative to the extracted payload.
+	 * The application comes first, followed by its dependencies
+	 */
+	public List<String> classPath(String executableJar) {
+		List<String> classPath = new ArrayList<>();
+		classPath.add(executableJar);
+		dependencies.keySet().forEach(name -> classPath.add(LAYER_DEPENDENCIES + "/" + name));
+		return classPath;
+	}
+
+	/**
+	 * writes the content of a layer through a builder storing repeated files
+	 * as links, if enabled
+	 */
+	private void writeDeduplicated(String layer, ArchiveBuilder archiveBuilder, LayerContent content) throws IOException {
+		if (!deduplication.isEnabled() && !deduplication.isPreserveSymlinks()) {
+			content.writeTo(archiveBuilder);
+			return;
+		}
+		DeduplicatingArchiveBuilder deduplicatingBuilder = new DeduplicatingArchiveBuilder(archiveBuilder, deduplication);
+		content.writeTo(deduplicatingBuilder);
+		if (deduplication.isEnabled()) {
+			report.addDeduplicated(layer, deduplicatingBuilder.getFiles(), deduplicatingBuilder.getBytes());
+		}
+	}
+
+	private PayloadLayer writeLayer(MavenProject mavenProject, SeekableByteChannel channel, String name, LayerContent content) throws IOException {
+		long offset = alignLayer(channel);
+		MessageDigest digest = Checksums.newDigest(HASH_ALGORITHM);
+		// the channel stays open for further layers
+		LayerInfo info = writeLayer(mavenProject, new DigestingChannel(channel, digest), name, content);
+		return new PayloadLayer(name, offset, channel.position() - offset, Checksums.toHex(digest.digest()), info.getShards(), info.getRawSize());
+	}
+
+	/**
+	 * @return the size of the uncompressed layer data and the number of
+	 *         archives written, without a content hash
+	 */
+	private LayerInfo writeLayer(MavenProject mavenProject, WritableByteChannel out, String name, LayerContent content) throws IOException {
+		if (shardsOf(name) > 1 || compressionPolicy.isEnabled()) {
+			return writeShardedLayer(mavenProject, out, name, content);
+		}
+		MeteredChannel compressed = new MeteredChannel(out);
+		MeteredChannel raw = new MeteredChannel(compressPayload(compressed));
+		try (ArchiveBuilder archiveBuilder = new ReportingArchiveBuilder(new NioTarArchiveBuilder(raw, userData, outputTimestamp != null ? outputTimestamp : 0),
+				report, name, raw, compressed)) {
+			content.writeTo(archiveBuilder);
+		}
+		// time spent in the compressor, and in writing and hashing its output
+		report.addTime(name + ".compression", raw.getNanos() - compressed.getNanos());
+		report.addTime(name + ".output", compressed.getNanos());
+		report.setRawLayerSize(name, raw.getBytes());
+		return new LayerInfo(raw.getBytes(), 1, null);
+	}
+
+	/**
+	 * writes the archives of a layer to temporary files, and then the layer
+	 * as a block containing the table of archives followed by the archives,
+	 * each starting at a layer boundary relative to the start of the layer.
+	 * Besides the compressed shards, files which are compressed already go to
+	 * an archive stored as is, if enabled by the compression policy. A layer
+	 * of a single archive is written without a table
+	 * 
+	 * @return the size of the uncompressed archives and their number, without
+	 *         a content hash
+	 */
+	private LayerInfo writeShardedLayer(MavenProject mavenProject, WritableByteChannel out, String name, LayerContent content) throws IOException {
+		// next to the executable, as the system temporary directory may be
+		// too small for a compressed JRE
+		Path directory = Paths.get(mavenProject.getBuild().getDirectory(), "executable-shards");
+		Files.createDirectories(directory);
+		List<LayerArchive> archives = new ArrayList<>();
+		try {
+			ShardingArchiveBuilder shardingBuilder = new ShardingArchiveBuilder();
+			for (int idx = 0; idx < shardsOf(name); ++idx) {
+				shardingBuilder.addShard(createArchive(directory, name, false, archives));
+			}
+			SegmentingArchiveBuilder segmentingBuilder = compressionPolicy.isEnabled()
+					? new SegmentingArchiveBuilder(shardingBuilder, createArchive(directory, name, true, archives), compressionPolicy)
+					: null;
+			try (ArchiveBuilder archiveBuilder = segmentingBuilder != null ? segmentingBuilder : shardingBuilder) {
+				content.writeTo(archiveBuilder);
+			}
+
+			// an empty stored archive is left out
+			List<LayerArchive> written = new ArrayList<>(archives);
+			if (segmentingBuilder != null) {
+				report.addStored(name, segmentingBuilder.getStoredFiles(), segmentingBuilder.getStoredBytes());
+				if (segmentingBuilder.getStoredFiles() == 0) {
+					written.remove(written.size() - 1);
+				}
+			}
+
+			MeteredChannel output = new MeteredChannel(out);
+			if (written.size() == 1) {
+				transferFully(written.get(0).file, output);
 			} else {
-				archiveBuilder.putPhysicalFile(source.getFileName().toString(), source);
+				StringBuilder table = new StringBuilder(SHARD_TABLE_HEADER).append('\n');
+				long position = LAYER_ALIGNMENT;
+				for (LayerArchive archive : written) {
+					long size = Files.size(archive.file);
+					table.append(archive.stored ? "stored " : "shard ").append(position).append(' ').append(size).append('\n');
+					position = (position + size + LAYER_ALIGNMENT - 1) / LAYER_ALIGNMENT * LAYER_ALIGNMENT;
+				}
+				table.append("end\n");
+				byte[] tableBytes = table.toString().getBytes(StandardCharsets.US_ASCII);
+				if (tableBytes.length > LAYER_ALIGNMENT) {
+					throw new IOException("too many shards for layer " + name);
+				}
+
+				writeFully(output, ByteBuffer.wrap(tableBytes));
+				long writtenBytes = tableBytes.length;
+				for (LayerArchive archive : written) {
+					writeFully(output, ByteBuffer.allocate((int) ((LAYER_ALIGNMENT - writtenBytes % LAYER_ALIGNMENT) % LAYER_ALIGNMENT)));
+					long size = transferFully(archive.file, output);
+					writtenBytes = (writtenBytes + LAYER_ALIGNMENT - 1) / LAYER_ALIGNMENT * LAYER_ALIGNMENT + size;
+				}
+			}
+
+			long compressionNanos = 0;
+			long outputNanos = output.getNanos();
+			long rawBytes = 0;
+			for (LayerArchive archive : written) {
+				compressionNanos += archive.raw.getNanos() - archive.compressed.getNanos();
+				outputNanos += archive.compressed.getNanos();
+				rawBytes += archive.raw.getBytes();
+			}
+			report.addTime(name + ".compression", compressionNanos);
+			report.addTime(name + ".output", outputNanos);
+			report.setRawLayerSize(name, rawBytes);
+			if (shardsOf(name) > 1) {
+				report.setShardSizes(name, shardingBuilder.getShardSizes());
+			}
+			return new LayerInfo(rawBytes, written.size(), null);
+		} finally {
+			for (LayerArchive archive : archives) {
+				Files.deleteIfExists(archive.file);
 			}
-			provider.addToArchive(mavenProject, archiveBuilder);
 		}
-		afterExecutableBuilt();
+	}
+
+	/**
+	 * creates an archive of the given layer writing to a new temporary file
+	 * in the given directory, compressed unless stored
+	 */
+	private ArchiveBuilder createArchive(Path directory, String name, boolean stored, List<LayerArchive> archives) throws IOException {
+		Path file = Files.createTempFile(directory, "executable-shard", ".tmp");
+		MeteredChannel compressed = new MeteredChannel(FileChannel.open(file, StandardOpenOption.WRITE));
+		// a stored archive is metered twice, so its compression time is zero
+		MeteredChannel raw = new MeteredChannel(stored ? compressed : compressPayload(compressed));
+		archives.add(new LayerArchive(file, stored, raw, compressed));
+		return new ReportingArchiveBuilder(new NioTarArchiveBuilder(raw, userData, outputTimestamp != null ? outputTimestamp : 0), report, name, raw,
+				compressed);
+	}
+
+	/**
+	 * copies the given file to the channel
+	 * 
+	 * @return the size of the file
+	 */
+	private static long transferFully(Path file, WritableByteChannel out) throws IOException {
+		long size = Files.size(file);
+		try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+			long transferred = 0;
+			while (transferred < size) {
+				transferred += in.transferTo(transferred, size - transferred, out);
+			}
+		}
+		return size;
+	}
+
+	private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	/**
+	 * number of shards the given layer is split into
+	 */
+	protected int shardsOf(String layer) {
+		return LAYER_JRE.equals(layer) || LAYER_DEPENDENCIES.equals(layer) ? Math.max(1, shards) : 1;
+	}
+
+	private PayloadLayer appendLayer(SeekableByteChannel channel, String name, CachedLayer layer) throws IOException {
+		long offset = alignLayer(channel);
+		try (FileChannel in = FileChannel.open(layer.getPath(), StandardOpenOption.READ)) {
+			long position = 0;
+			while (position < layer.getSize()) {
+				position += in.transferTo(position, layer.getSize() - position, channel);
+			}
+		}
+		return new PayloadLayer(name, offset, layer.getSize(), layer.getHash(), layer.getInfo().getShards(), layer.getInfo().getRawSize());
+	}
+
+	/**
+	 * moves the channel to the next layer boundary, leaving a zero filled gap
+	 */
+	private static long alignLayer(SeekableByteChannel channel) throws IOException {
+		long offset = (channel.position() + LAYER_ALIGNMENT - 1) / LAYER_ALIGNMENT * LAYER_ALIGNMENT;
+		channel.position(offset);
+		return offset;
+	}
+
+	/**
+	 * cache key of the JRE layer, covering the JRE provider and everything
+	 * else influencing the layers content
+	 */
+	private String jreLayerKey(BuildContext context) throws IOException {
+		Fingerprint fingerprint = new Fingerprint(inputFingerprint);
+		fingerprint.putValue("layer", "jre");
+		fingerprint.putValue("layer.format", LAYER_FORMAT);
+		// covers changes of snapshot versions of this plugin
+		fingerprint.putValue("pluginVersion", PluginVersion.PLUGIN_VERSION);
+		fingerprint.putFile(PluginVersion.pluginLocation());
+		fingerprint.putValue("builder.codec", codec);
+		fingerprint.putValue("builder.userData", userData);
+		fingerprint.putValue("builder.outputTimestamp", outputTimestamp);
+		fingerprint.putValue("builder.jreFilter", jreFilter);
+		fingerprint.putValue("builder.shards", shardsOf(LAYER_JRE));
+		fingerprint.putValue("builder.deduplication", deduplication);
+		fingerprint.putValue("builder.compressionPolicy", compressionPolicy);
+		fingerprint.putValue("builder.runtimeHashed", isRuntimeHashed());
+		context.getProvider().fingerprint(context.getMavenProject(), fingerprint);
+		return fingerprint.digest();
+	}
+
+	/**
+	 * cache key of the dependency layer. The dependencies are hashed, as
+	 * snapshot dependencies change without a change of their file names
+	 */
+	private String dependencyLayerKey() throws IOException {
+		Fingerprint fingerprint = new Fingerprint(inputFingerprint);
+		fingerprint.putValue("layer", LAYER_DEPENDENCIES);
+		fingerprint.putValue("layer.format", LAYER_FORMAT);
+		fingerprint.putValue("pluginVersion", PluginVersion.PLUGIN_VERSION);
+		fingerprint.putFile(PluginVersion.pluginLocation());
+		fingerprint.putValue("builder.codec", codec);
+		fingerprint.putValue("builder.userData", userData);
+		fingerprint.putValue("builder.outputTimestamp", outputTimestamp);
+		fingerprint.putValue("builder.repackJars", repackJars);
+		fingerprint.putValue("builder.shards", shardsOf(LAYER_DEPENDENCIES));
+		fingerprint.putValue("builder.deduplication", deduplication);
+		fingerprint.putValue("builder.compressionPolicy", compressionPolicy);
+		putDependencies(fingerprint);
+		return fingerprint.digest();
+	}
+
+	private void putDependencies(Fingerprint fingerprint) throws IOException {
+		fingerprint.putValue("builder.dependencies", dependencies != null ? String.join(":", dependencies.keySet()) : null);
+		if (dependencies == null) {
+			return;
+		}
+		for (Path dependency : dependencies.values()) {
+			if (Files.isDirectory(dependency)) {
+				fingerprint.putDirectory(dependency);
+			} else {
+				fingerprint.putFile(dependency);
+			}
+		}
+	}
+
+	@Override
+	public void fingerprint(Fingerprint fingerprint) throws IOException {
+		fingerprint.putValue("builder", getClass().getName());
+		fingerprint.putValue("builder.codec", codec);
+		fingerprint.putValue("builder.userData", userData);
+		fingerprint.putValue("builder.outputTimestamp", outputTimestamp);
+		fingerprint.putValue("builder.jreFilter", jreFilter);
+		fingerprint.putValue("builder.repackJars", repackJars);
+		fingerprint.putValue("builder.mainClass", mainClass);
+		fingerprint.putValue("builder.shards", shards);
+		fingerprint.putValue("builder.deduplication", deduplication);
+		fingerprint.putValue("builder.compressionPolicy", compressionPolicy);
+		putDependencies(fingerprint);
+	}
+
+	/**
+	 * whether the content hash of the JRE layer is needed, see
+	 * {@link BuildContext#getRuntimeHash()}
+	 */
+	protected boolean isRuntimeHashed() {
+		return false;
+	}
+
+	/**
+	 * wraps the given channel into one compressing the payload with the
+	 * configured codec
+	 */
+	protected WritableByteChannel compressPayload(WritableByteChannel out) throws IOException {
+		return codec.compress(out, compressionSettings);
 	}
 
 	/**
 	 * Postprocess the built executable
+	 * 
+	 * @param context
+	 *            the state of the build
+	 * @param payloadHash
+	 *            hash identifying the content of the payload
+	 * @param layers
+	 *            table of contents of the payload
 	 */
-	protected void afterExecutableBuilt() throws IOException {
+	protected void afterExecutableBuilt(BuildContext context, String payloadHash, List<PayloadLayer> layers) throws IOException {
 		// to be overridden from implementations
 	}
 
 	/**
-	 * prepares the executable file and returns an {@link ArchiveBuilder}
-	 * instance which will be used to append the Application and the Jre
+	 * prepares the executable file and positions the channel where the
+	 * payload, containing the Application and the Jre, will be appended
+	 * 
+	 * @param context
+	 *            the state of the build, which gets the data offset
+	 * @param layerNames
+	 *            names of the layers, which will be written in this order
 	 */
-	protected abstract ArchiveBuilder createExecutableBase(SeekableByteChannel channel) throws IOException;
+	protected abstract void createExecutableBase(BuildContext context, SeekableByteChannel channel, List<String> layerNames) throws IOException;
 }
@@ -0,0 +1,43 @@
+package org.stummi.maven.executable.exebuilder;
+
+import java.nio.file.Path;
+
+import org.apache.maven.project.MavenProject;
+import org.stummi.maven.executable.jreprovider.JreProvider;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/**
+ * State of a single executable build. Builders keep only their configuration,
+ * so one builder can create several executables at the same time, each with
+ * its own context.
+ */
+@Getter
+@RequiredArgsConstructor
+public class BuildContext {
+	private final MavenProject mavenProject;
+	private final Path source;
+	private final Path out;
+	private final JreProvider provider;
+	private final String executableJar;
+
+	/**
+	 * build time in seconds since the epoch, as shown by the executable
+	 */
+	private final long buildTime;
+
+	/**
+	 * offset of the payload within the executable
+	 */
+	@Setter
+	private long dataOffset;
+
+	/**
+	 * hash of the files in the JRE layer, identifying the runtime
+	 * independent of how it is compressed. Only set if the builder needs it
+	 */
+	@Setter
+	private String runtimeHash;
+}
@@ -0,0 +1,118 @@
+package org.stummi.maven.executable.exebuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.stummi.maven.executable.Checksums;
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+
+/**
+ * Calculates a hash of the files put into a layer, while they are put into
+ * the archive. Unlike the hash of the layer data, it only covers the names,
+ * contents and executable flags of the files, so it is the same for any
+ * codec, sharding, and file modification times. A hard link counts as a copy
+ * of its target.
+ */
+class ContentHashingArchiveBuilder implements ArchiveBuilder {
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static final String FORMAT = "content-hash 1\n";
+
+	private final ArchiveBuilder builder;
+
+	/**
+	 * description of every entry, by its name
+	 */
+	private final SortedMap<String, String> entries = new TreeMap<>();
+
+	ContentHashingArchiveBuilder(ArchiveBuilder builder) {
+		this.builder = builder;
+	}
+
+	@Override
+	public void putDirectory(String name) throws IOException {
+		entries.put(entryName(name), "d");
+		builder.putDirectory(name);
+	}
+
+	@Override
+	public void putFile(String name, long size, InputStream is, boolean executable) throws IOException {
+		DigestInputStream content = new DigestInputStream(is, Checksums.newDigest(HASH_ALGORITHM));
+		builder.putFile(name, size, content, executable);
+		putFileEntry(name, executable, content.getMessageDigest());
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path) throws IOException {
+		if (Files.isDirectory(path)) {
+			entries.put(entryName(name), "d");
+			builder.putPhysicalFile(name, path);
+			return;
+		}
+		// read once for both the hash and the archive
+		try (DigestInputStream content = new DigestInputStream(Files.newInputStream(path), Checksums.newDigest(HASH_ALGORITHM))) {
+			builder.putPhysicalFile(name, path, content);
+			putFileEntry(name, Files.isExecutable(path), content.getMessageDigest());
+		}
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path, InputStream content) throws IOException {
+		if (Files.isDirectory(path)) {
+			entries.put(entryName(name), "d");
+			builder.putPhysicalFile(name, path, content);
+			return;
+		}
+		DigestInputStream digestingContent = new DigestInputStream(content, Checksums.newDigest(HASH_ALGORITHM));
+		builder.putPhysicalFile(name, path, digestingContent);
+		putFileEntry(name, Files.isExecutable(path), digestingContent.getMessageDigest());
+	}
+
+	private void putFileEntry(String name, boolean executable, MessageDigest digest) {
+		entries.put(entryName(name), (executable ? "x " : "f ") + Checksums.toHex(digest.digest()));
+	}
+
+	@Override
+	public void putHardLink(String name, String target) throws IOException {
+		String targetEntry = entries.get(entryName(target));
+		if (targetEntry == null) {
+			throw new IOException("hard link " + name + " to unknown file " + target);
+		}
+		entries.put(entryName(name), targetEntry);
+		builder.putHardLink(name, target);
+	}
+
+	@Override
+	public void putSymbolicLink(String name, String target) throws IOException {
+		entries.put(entryName(name), "l " + target);
+		builder.putSymbolicLink(name, target);
+	}
+
+	private static String entryName(String name) {
+		return name.endsWith("/") ? name.substring(0, name.length() - 1) : name;
+	}
+
+	/**
+	 * the hash of all entries put so far
+	 */
+	String digest() throws IOException {
+		MessageDigest digest = Checksums.newDigest(HASH_ALGORITHM);
+		digest.update(FORMAT.getBytes(StandardCharsets.US_ASCII));
+		for (Map.Entry<String, String> entry : entries.entrySet()) {
+			digest.update((entry.getKey() + "\0" + entry.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+		}
+		return Checksums.toHex(digest.digest());
+	}
+
+	@Override
+	public void close() throws IOException {
+		builder.close();
+	}
+}
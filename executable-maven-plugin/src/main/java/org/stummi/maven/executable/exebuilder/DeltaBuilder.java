@@ -0,0 +1,206 @@
+package org.stummi.maven.executable.exebuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.stummi.maven.executable.Checksums;
+
+import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Creates a delta between two versions of an executable, from which the
+ * previous version rebuilds the new one with {@code --wrapper-apply-delta}.
+ * <p>
+ * The executables are compared in blocks of the layer alignment. Blocks of the
+ * new executable found anywhere in the previous one are copied from there, all
+ * others are stored in the delta. As layers start at block boundaries,
+ * unchanged layers are found even if they moved. The delta starts with a text
+ * header, followed by the stored data at the next block boundary:
+ *
+ * <pre>
+ * executable-delta 1
+ * base &lt;sha256&gt; &lt;size&gt;
+ * target &lt;sha256&gt; &lt;size&gt;
+ * copy &lt;target offset&gt; &lt;length&gt; &lt;base offset&gt;
+ * data &lt;target offset&gt; &lt;length&gt; &lt;offset in stored data&gt;
+ * end
+ * </pre>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class DeltaBuilder {
+	private static final String MAGIC = "executable-delta";
+	private static final int FORMAT = 1;
+	private static final int BLOCK_SIZE = AbstractExeBuilder.LAYER_ALIGNMENT;
+
+	/**
+	 * shorter matches are stored instead, as every copy costs the wrapper a
+	 * few processes
+	 */
+	private static final long MIN_COPY_LENGTH = 16 * BLOCK_SIZE;
+
+	private final Path base;
+	private final Path target;
+
+	@AllArgsConstructor
+	private static class Instruction {
+		private final boolean copy;
+		private final long targetOffset;
+		private long length;
+		private long sourceOffset;
+
+		private long sourceEnd() {
+			return sourceOffset + length;
+		}
+	}
+
+	/**
+	 * writes the delta to the given file
+	 */
+	public void write(Path delta) throws IOException {
+		MessageDigest blockDigest = Checksums.newDigest(AbstractExeBuilder.HASH_ALGORITHM);
+		MessageDigest baseDigest = Checksums.newDigest(AbstractExeBuilder.HASH_ALGORITHM);
+		List<ByteBuffer> baseBlocks = new ArrayList<>();
+		Map<ByteBuffer, Long> baseOffsets = new HashMap<>();
+		try (FileChannel in = FileChannel.open(base, StandardOpenOption.READ)) {
+			ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+			while (readBlock(in, block)) {
+				baseDigest.update(block.array(), 0, block.limit());
+				ByteBuffer blockHash = hash(blockDigest, block);
+				baseOffsets.putIfAbsent(blockHash, (long) baseBlocks.size() * BLOCK_SIZE);
+				baseBlocks.add(blockHash);
+			}
+		}
+
+		MessageDigest targetDigest = Checksums.newDigest(AbstractExeBuilder.HASH_ALGORITHM);
+		List<Instruction> instructions = new ArrayList<>();
+		long targetSize;
+		try (FileChannel in = FileChannel.open(target, StandardOpenOption.READ)) {
+			targetSize = in.size();
+			ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+			long offset = 0;
+			while (readBlock(in, block)) {
+				targetDigest.update(block.array(), 0, block.limit());
+				ByteBuffer blockHash = hash(blockDigest, block);
+				Instruction last = instructions.isEmpty() ? null : instructions.get(instructions.size() - 1);
+				if (last != null && last.copy && last.length % BLOCK_SIZE == 0 && last.sourceEnd() / BLOCK_SIZE < baseBlocks.size()
+						&& baseBlocks.get((int) (last.sourceEnd() / BLOCK_SIZE)).equals(blockHash)) {
+					// prefer continuing the current match
+					last.length += block.limit();
+				} else if (baseOffsets.containsKey(blockHash)) {
+					instructions.add(new Instruction(true, offset, block.limit(), baseOffsets.get(blockHash)));
+				} else {
+					addData(instructions, offset, block.limit());
+				}
+				offset += block.limit();
+			}
+		}
+
+		// replace short matches with stored data, merging it with adjacent data
+		List<Instruction> merged = new ArrayList<>();
+		for (Instruction instruction : instructions) {
+			if (instruction.copy && instruction.length >= MIN_COPY_LENGTH) {
+				merged.add(instruction);
+			} else {
+				addData(merged, instruction.targetOffset, instruction.length);
+			}
+		}
+
+		StringBuilder header = new StringBuilder();
+		header.append(MAGIC).append(' ').append(FORMAT).append('\n');
+		header.append("base ").append(Checksums.toHex(baseDigest.digest())).append(' ').append(Files.size(base)).append('\n');
+		header.append("target ").append(Checksums.toHex(targetDigest.digest())).append(' ').append(targetSize).append('\n');
+		long copied = 0;
+		long stored = 0;
+		for (Instruction instruction : merged) {
+			if (instruction.copy) {
+				header.append("copy ");
+				copied += instruction.length;
+			} else {
+				// stored data is laid out in the order of the target, so every
+				// part but the very last one starts at a block boundary
+				instruction.sourceOffset = stored;
+				header.append("data ");
+				stored += instruction.length;
+			}
+			header.append(instruction.targetOffset).append(' ').append(instruction.length).append(' ').append(instruction.sourceOffset).append('\n');
+		}
+		header.append("end\n");
+
+		Path tmpDelta = Files.createTempFile(delta.toAbsolutePath().getParent(), delta.getFileName().toString(), ".tmp");
+		try {
+			byte[] headerBytes = header.toString().getBytes(StandardCharsets.US_ASCII);
+			long dataStart = (headerBytes.length + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+			try (FileChannel in = FileChannel.open(target, StandardOpenOption.READ);
+					FileChannel out = FileChannel.open(tmpDelta, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer headerBuffer = ByteBuffer.wrap(headerBytes);
+				while (headerBuffer.hasRemaining()) {
+					out.write(headerBuffer);
+				}
+				out.position(dataStart);
+				for (Instruction instruction : merged) {
+					if (!instruction.copy) {
+						long position = instruction.targetOffset;
+						long end = instruction.targetOffset + instruction.length;
+						while (position < end) {
+							position += in.transferTo(position, end - position, out);
+						}
+					}
+				}
+			}
+			if (Files.getFileStore(tmpDelta).supportsFileAttributeView(PosixFileAttributeView.class)) {
+				// temporary files are only readable by their owner
+				Files.setPosixFilePermissions(tmpDelta, PosixFilePermissions.fromString("rw-r--r--"));
+			}
+			Files.move(tmpDelta, delta, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmpDelta);
+		}
+
+		log.info("delta from " + base + ": " + copied + " bytes copied, " + stored + " bytes stored");
+		log.info("created delta file: " + delta + " (" + Files.size(delta) + " bytes)");
+	}
+
+	private static void addData(List<Instruction> instructions, long offset, long length) {
+		Instruction last = instructions.isEmpty() ? null : instructions.get(instructions.size() - 1);
+		if (last != null && !last.copy) {
+			last.length += length;
+		} else {
+			instructions.add(new Instruction(false, offset, length, 0));
+		}
+	}
+
+	/**
+	 * reads the next block, which is only shorter at the end of the file
+	 *
+	 * @return false at the end of the file
+	 */
+	private static boolean readBlock(FileChannel in, ByteBuffer block) throws IOException {
+		block.clear();
+		while (block.hasRemaining() && in.read(block) >= 0) {
+			// read until the block is full or the file ends
+		}
+		block.flip();
+		return block.hasRemaining();
+	}
+
+	private static ByteBuffer hash(MessageDigest digest, ByteBuffer block) {
+		digest.update(block.array(), 0, block.limit());
+		return ByteBuffer.wrap(digest.digest());
+	}
+}
@@ -0,0 +1,42 @@
+package org.stummi.maven.executable.exebuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Updates a digest with all data written through it. Closing this channel
+ * leaves the underlying one open, so further data can be written to it.
+ */
+@RequiredArgsConstructor
+class DigestingChannel implements WritableByteChannel {
+	private final WritableByteChannel out;
+	private final MessageDigest digest;
+	private boolean open = true;
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+		ByteBuffer written = src.duplicate();
+		int len = out.write(src);
+		written.limit(written.position() + len);
+		digest.update(written);
+		return len;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+	}
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 
 import org.apache.maven.project.MavenProject;
+import org.stummi.maven.executable.Fingerprint;
 import org.stummi.maven.executable.jreprovider.JreProvider;
 
 /**
@@ -20,4 +21,10 @@ public interface ExeBuilder {
 	 * creates the executable for the given maven project
 	 */
 	void createExe(MavenProject mavenProject, Path source, Path out, JreProvider provider, String executableJarFilename) throws IOException;
+
+	/**
+	 * Adds the configuration and resources of this builder, which influence
+	 * the created executable, to the given fingerprint
+	 */
+	void fingerprint(Fingerprint fingerprint) throws IOException;
 }
@@ -0,0 +1,36 @@
+package org.stummi.maven.executable.exebuilder;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+import lombok.Data;
+
+/**
+ * Configuration of the persistent extraction cache of the wrapper script. If
+ * enabled, the payload is extracted only once into a per-user cache directory
+ * keyed by the payload hash, instead of into a new temporary directory on
+ * every launch. Layers exceeding the age or size limits are removed by a
+ * launch at most once a day, and after a launch extracted a layer.
+ */
+@Data
+public class ExtractionCache {
+	@Parameter
+	private boolean enabled = false;
+
+	/**
+	 * cached extractions of the application not used for this many days are
+	 * removed
+	 */
+	@Parameter
+	private int maxAgeDays = 30;
+
+	/**
+	 * if the cached extractions of the application exceed this size, the least
+	 * recently used ones are removed
+	 */
+	@Parameter
+	private int maxSizeMb = 1024;
+
+	public long getMaxSizeKb() {
+		return maxSizeMb * 1024L;
+	}
+}
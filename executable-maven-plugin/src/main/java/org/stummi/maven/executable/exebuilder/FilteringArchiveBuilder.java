@@ -0,0 +1,185 @@
+package org.stummi.maven.executable.exebuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.stummi.maven.executable.BuildReport;
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+import org.stummi.maven.executable.archiveBuilder.EntryFilter;
+import org.stummi.maven.executable.jreprovider.JreFilter;
+import org.stummi.maven.executable.jreprovider.JreFilter.Rule;
+
+/**
+ * Leaves out the files of the JRE excluded by a {@link JreFilter}, counting
+ * the files and bytes removed by every rule. In dry run mode all files are
+ * kept, and only counted.
+ */
+class FilteringArchiveBuilder implements ArchiveBuilder {
+	private static final String JRE_ROOT = "jre/";
+	private static final String NOT_INCLUDED = "not included";
+
+	private final ArchiveBuilder builder;
+	private final boolean dryRun;
+	private final List<Rule> excludes;
+	private final List<Rule> includes;
+
+	/**
+	 * files and bytes removed per rule, guarded by itself as directory walks
+	 * filter from several threads
+	 */
+	private final Map<String, long[]> removed = new LinkedHashMap<>();
+
+	FilteringArchiveBuilder(ArchiveBuilder builder, JreFilter filter) {
+		this.builder = builder;
+		this.dryRun = filter.isDryRun();
+		this.excludes = filter.excludeRules();
+		this.includes = filter.includeRules();
+
+		// every rule is reported, even if it removes nothing
+		excludes.forEach(r -> removed.put(r.getDescription(), new long[2]));
+		if (!includes.isEmpty()) {
+			removed.put(NOT_INCLUDED, new long[2]);
+		}
+	}
+
+	@Override
+	public void putDirectory(String name) throws IOException {
+		// the files within are counted one by one
+		if (dryRun || excludedBy(name, true) == null) {
+			builder.putDirectory(name);
+		}
+	}
+
+	@Override
+	public void putFile(String name, long size, InputStream is, boolean executable) throws IOException {
+		if (accepts(name, size)) {
+			builder.putFile(name, size, is, executable);
+		}
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path) throws IOException {
+		if (accepts(name, Files.size(path))) {
+			builder.putPhysicalFile(name, path);
+		}
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path, InputStream content) throws IOException {
+		if (accepts(name, Files.size(path))) {
+			builder.putPhysicalFile(name, path, content);
+		}
+	}
+
+	@Override
+	public void putHardLink(String name, String target) throws IOException {
+		if (accepts(name, 0)) {
+			builder.putHardLink(name, target);
+		}
+	}
+
+	@Override
+	public void putSymbolicLink(String name, String target) throws IOException {
+		if (accepts(name, 0)) {
+			builder.putSymbolicLink(name, target);
+		}
+	}
+
+	@Override
+	public void putPhysicalDirectoryRecursive(String destInArchive, Path path, EntryFilter filter) throws IOException {
+		// entries are filtered during the walk, so excluded files are not read
+		// and excluded directories not listed
+		builder.putPhysicalDirectoryRecursive(destInArchive, path, (name, p, attrs) -> filter.accepts(name, p, attrs) && accepts(name, p, attrs));
+	}
+
+	private boolean accepts(String name, Path path, BasicFileAttributes attrs) throws IOException {
+		if (!attrs.isDirectory()) {
+			return accepts(name, attrs.size());
+		}
+		String rule = excludedBy(name, true);
+		if (rule == null || dryRun) {
+			return true;
+		}
+		try (Stream<Path> files = Files.walk(path, FileVisitOption.FOLLOW_LINKS)) {
+			LongSummaryStatistics sizes = files.filter(Files::isRegularFile).mapToLong(f -> f.toFile().length()).summaryStatistics();
+			count(rule, sizes.getCount(), sizes.getSum());
+		}
+		return false;
+	}
+
+	private boolean accepts(String name, long size) {
+		String rule = excludedBy(name, false);
+		if (rule == null) {
+			return true;
+		}
+		count(rule, 1, size);
+		return dryRun;
+	}
+
+	/**
+	 * @return the description of the rule excluding the given entry, or
+	 *         {@code null} if it is kept
+	 */
+	private String excludedBy(String name, boolean directory) {
+		if (!name.startsWith(JRE_ROOT)) {
+			return null;
+		}
+		String path = name.endsWith("/") ? name.substring(JRE_ROOT.length(), name.length() - 1) : name.substring(JRE_ROOT.length());
+
+		// everything within an excluded directory is excluded as well
+		for (int idx = path.indexOf('/'); idx >= 0; idx = path.indexOf('/', idx + 1)) {
+			String rule = excludingRule(path.substring(0, idx), true);
+			if (rule != null) {
+				return rule;
+			}
+		}
+		String rule = excludingRule(path, directory);
+		if (rule != null || directory || includes.isEmpty()) {
+			return rule;
+		}
+		return includes.stream().anyMatch(r -> r.matches(path)) ? null : NOT_INCLUDED;
+	}
+
+	private String excludingRule(String path, boolean directory) {
+		for (Rule rule : excludes) {
+			// lets dir/** match the directory itself, so it's not descended
+			// into
+			if (rule.matches(path) || directory && rule.matches(path + "/")) {
+				return rule.getDescription();
+			}
+		}
+		return null;
+	}
+
+	private void count(String rule, long files, long bytes) {
+		synchronized (removed) {
+			long[] sizes = removed.get(rule);
+			sizes[0] += files;
+			sizes[1] += bytes;
+		}
+	}
+
+	/**
+	 * adds the files and bytes removed per rule to the report
+	 */
+	void addTo(BuildReport report) {
+		synchronized (removed) {
+			report.startFilter(dryRun);
+			removed.forEach((rule, sizes) -> report.addFiltered(rule, sizes[0], sizes[1]));
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		builder.close();
+	}
+}
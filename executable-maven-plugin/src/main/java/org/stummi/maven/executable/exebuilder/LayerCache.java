@@ -0,0 +1,194 @@
+package org.stummi.maven.executable.exebuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.stummi.maven.executable.CacheLocks;
+import org.stummi.maven.executable.Checksums;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache of compressed payload layers, shared between builds. Layers are keyed
+ * by a hash over everything which influences their content, so a cached layer
+ * can be copied into a new executable as is.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class LayerCache {
+	private static final String LAYER_SUFFIX = ".layer";
+	private static final String HASH_SUFFIX = ".sha256";
+	private static final String INFO_SUFFIX = ".info";
+	private static final String RAW_SIZE_KEY = "rawSize";
+	private static final String SHARDS_KEY = "shards";
+	private static final String CONTENT_HASH_KEY = "contentHash";
+	private static final String LOCK_SUFFIX = ".lock";
+	private static final long MAX_UNUSED_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+	private final Path directory;
+
+	/**
+	 * Writes the content of a layer
+	 */
+	@FunctionalInterface
+	public interface LayerWriter {
+		/**
+		 * @return information about the written layer, to be kept with it
+		 */
+		LayerInfo write(WritableByteChannel out) throws IOException;
+	}
+
+	/**
+	 * information about the content of a layer, which can't be determined
+	 * from the compressed data
+	 */
+	@Value
+	public static class LayerInfo {
+		/**
+		 * size of the uncompressed layer data
+		 */
+		private final long rawSize;
+		/**
+		 * number of archives the layer consists of
+		 */
+		private final int shards;
+		/**
+		 * hash of the files in the layer, may be {@code null}
+		 */
+		private final String contentHash;
+	}
+
+	@Value
+	public static class CachedLayer {
+		private final Path path;
+		private final long size;
+		/**
+		 * SHA-256 of the layer data
+		 */
+		private final String hash;
+		private final LayerInfo info;
+	}
+
+	/**
+	 * returns the cached layer for the given key, writing it with the given
+	 * writer if it is not cached yet
+	 */
+	public CachedLayer get(String key, LayerWriter writer) throws IOException {
+		Path layerPath = directory.resolve(key + LAYER_SUFFIX);
+		Path hashPath = directory.resolve(key + HASH_SUFFIX);
+		Path infoPath = directory.resolve(key + INFO_SUFFIX);
+		Files.createDirectories(directory);
+
+		// concurrent builds of the same layer, like modules of a parallel
+		// build sharing a JRE, wait for the first one instead of compressing
+		// the layer as well
+		return CacheLocks.withLock(directory.resolve(key + LOCK_SUFFIX), () -> {
+			if (Files.isRegularFile(layerPath) && Files.isRegularFile(hashPath) && Files.isRegularFile(infoPath)) {
+				log.info("using cached layer " + layerPath);
+				Files.setLastModifiedTime(layerPath, FileTime.fromMillis(System.currentTimeMillis()));
+			} else {
+				log.info("creating cached layer " + layerPath);
+				evictUnused();
+
+				// write to temporary files and move them in place afterwards,
+				// so builds not taking the lock never see partially written
+				// layers
+				Path tmpLayer = Files.createTempFile(directory, key, ".tmp");
+				Path tmpHash = Files.createTempFile(directory, key, ".tmp");
+				Path tmpInfo = Files.createTempFile(directory, key, ".tmp");
+				try {
+					MessageDigest digest = Checksums.newDigest("SHA-256");
+					LayerInfo info;
+					try (FileChannel out = FileChannel.open(tmpLayer, StandardOpenOption.WRITE)) {
+						info = writer.write(new DigestingChannel(out, digest));
+					}
+					// written before the layer is moved in place, so every cached
+					// layer comes with its information
+					storeInfo(tmpInfo, info);
+					Files.move(tmpInfo, infoPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+					Files.write(tmpHash, Checksums.toHex(digest.digest()).getBytes(StandardCharsets.UTF_8));
+					Files.move(tmpHash, hashPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+					Files.move(tmpLayer, layerPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} finally {
+					Files.deleteIfExists(tmpLayer);
+					Files.deleteIfExists(tmpHash);
+					Files.deleteIfExists(tmpInfo);
+				}
+			}
+
+			String hash = new String(Files.readAllBytes(hashPath), StandardCharsets.UTF_8).trim();
+			return new CachedLayer(layerPath, Files.size(layerPath), hash, loadInfo(infoPath));
+		});
+	}
+
+	private static void storeInfo(Path path, LayerInfo info) throws IOException {
+		Properties props = new Properties();
+		props.setProperty(RAW_SIZE_KEY, Long.toString(info.getRawSize()));
+		props.setProperty(SHARDS_KEY, Integer.toString(info.getShards()));
+		if (info.getContentHash() != null) {
+			props.setProperty(CONTENT_HASH_KEY, info.getContentHash());
+		}
+		try (OutputStream out = Files.newOutputStream(path)) {
+			props.store(out, "executable-maven-plugin layer information");
+		}
+	}
+
+	private static LayerInfo loadInfo(Path path) throws IOException {
+		Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(path)) {
+			props.load(in);
+		}
+		try {
+			return new LayerInfo(Long.parseLong(props.getProperty(RAW_SIZE_KEY)), Integer.parseInt(props.getProperty(SHARDS_KEY)),
+					props.getProperty(CONTENT_HASH_KEY));
+		} catch (NumberFormatException e) {
+			throw new IOException("invalid layer information " + path, e);
+		}
+	}
+
+	/**
+	 * removes layers not used for a while. Layers in use by other builds are
+	 * skipped, as are the ones of the current thread
+	 */
+	private void evictUnused() throws IOException {
+		long threshold = System.currentTimeMillis() - MAX_UNUSED_MILLIS;
+		try (DirectoryStream<Path> layers = Files.newDirectoryStream(directory, "*" + LAYER_SUFFIX)) {
+			for (Path layer : layers) {
+				if (Files.getLastModifiedTime(layer).toMillis() >= threshold) {
+					continue;
+				}
+				String name = layer.getFileName().toString();
+				String key = name.substring(0, name.length() - LAYER_SUFFIX.length());
+				Path lockFile = directory.resolve(key + LOCK_SUFFIX);
+				CacheLocks.tryWithLock(lockFile, () -> {
+					// the layer may have been used since it was listed
+					if (Files.exists(layer) && Files.getLastModifiedTime(layer).toMillis() < threshold) {
+						log.info("removing unused cached layer " + layer);
+						Files.deleteIfExists(layer);
+						Files.deleteIfExists(directory.resolve(key + HASH_SUFFIX));
+						Files.deleteIfExists(directory.resolve(key + INFO_SUFFIX));
+						// builds waiting for this lock take the one of the next
+						// build creating the layer instead
+						Files.deleteIfExists(lockFile);
+					}
+					return null;
+				});
+			}
+		}
+	}
+}
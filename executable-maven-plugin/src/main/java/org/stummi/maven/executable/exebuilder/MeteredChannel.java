@@ -0,0 +1,50 @@
+package org.stummi.maven.executable.exebuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Counts the bytes written to a channel and the time spent writing and
+ * closing it
+ */
+@RequiredArgsConstructor
+class MeteredChannel implements WritableByteChannel {
+	private final WritableByteChannel out;
+
+	@Getter
+	private long bytes;
+
+	@Getter
+	private long nanos;
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		long start = System.nanoTime();
+		try {
+			int len = out.write(src);
+			bytes += len;
+			return len;
+		} finally {
+			nanos += System.nanoTime() - start;
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return out.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		long start = System.nanoTime();
+		try {
+			out.close();
+		} finally {
+			nanos += System.nanoTime() - start;
+		}
+	}
+}
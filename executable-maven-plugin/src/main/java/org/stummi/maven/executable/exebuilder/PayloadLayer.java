@@ -0,0 +1,41 @@
+package org.stummi.maven.executable.exebuilder;
+
+import lombok.Value;
+
+/**
+ * Entry of the payload table of contents. Each layer is a separately
+ * compressed, complete tar archive, so it can be extracted on its own.
+ */
+@Value
+public class PayloadLayer {
+	private final String name;
+
+	/**
+	 * position of the layer within the executable, always a multiple of
+	 * {@link AbstractExeBuilder#LAYER_ALIGNMENT}
+	 */
+	private final long offset;
+
+	/**
+	 * length of the compressed layer data
+	 */
+	private final long length;
+
+	/**
+	 * SHA-256 of the compressed layer data
+	 */
+	private final String hash;
+
+	/**
+	 * number of archives the layer is split into. Layers of several shards
+	 * start with a table of their shards, see
+	 * {@link AbstractExeBuilder#MAX_SHARDS}
+	 */
+	private final int shards;
+
+	/**
+	 * length of the uncompressed layer data, roughly the space taken by the
+	 * extracted files
+	 */
+	private final long rawLength;
+}
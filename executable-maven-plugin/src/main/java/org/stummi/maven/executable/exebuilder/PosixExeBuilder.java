@@ -1,31 +1,32 @@
 package org.stummi.maven.executable.exebuilder;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.channels.Channels;
+import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermission;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPOutputStream;
+import java.util.TimeZone;
+import java.util.stream.Collectors;
 
+import org.stummi.maven.executable.Checksums;
+import org.stummi.maven.executable.Fingerprint;
 import org.stummi.maven.executable.PluginVersion;
-import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
-import org.stummi.maven.executable.archiveBuilder.TarArchiveBuilder;
-import org.stummi.maven.executable.archiveBuilder.UserData;
 
 import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Template;
 import com.github.jknack.handlebars.io.ClassPathTemplateLoader;
 
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -37,51 +38,124 @@ public class PosixExeBuilder extends AbstractExeBuilder {
 			PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OWNER_READ,
 			PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE));
 
+	private static final String TEMPLATE_PATH = "/org/stummi/maven/executable/";
+	private static final List<String> TEMPLATES = Arrays.asList("wrapper", "functions", "tools", "helpText", "versionText");
+
+	@Setter
+	private ExtractionCache extractionCache = new ExtractionCache();
+
+	@Setter
+	private RuntimeStore runtimeStore = new RuntimeStore();
+
+	@Setter
+	private TemporaryExtraction temporaryExtraction = new TemporaryExtraction();
+
 	@Override
 	public String toPlatformSpecificBinaryName(String basename) {
 		return basename;
 	}
 
 	@Override
-	protected ArchiveBuilder createExecutableBase(SeekableByteChannel channel) throws IOException {
-		int dataOffset = 4096;
-		OutputStream os = Channels.newOutputStream(channel);
-		OutputStreamWriter writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
-		writeWrapperScript(dataOffset, writer);
-		long position = channel.position();
-		log.info("wrapper script size: " + position);
-		if (position > dataOffset) {
+	protected void createExecutableBase(BuildContext context, SeekableByteChannel channel, List<String> layerNames) throws IOException {
+		long dataOffset = 4096;
+
+		// The script itself is written after the payload, because it contains
+		// the payload hash and the layer table. Render it with placeholders at
+		// least as long as the real values to determine the data offset.
+		long start = System.nanoTime();
+		String placeholderHash = Checksums.toHex(new byte[Checksums.newDigest(HASH_ALGORITHM).getDigestLength()]);
+		List<PayloadLayer> placeholderLayers = layerNames.stream() //
+				.map(name -> new PayloadLayer(name, Long.MAX_VALUE, Long.MAX_VALUE, placeholderHash, MAX_SHARDS + 1, Long.MAX_VALUE)) //
+				.collect(Collectors.toList());
+		context.setDataOffset(dataOffset);
+		byte[] script = renderWrapperScript(context, placeholderHash, placeholderHash, placeholderLayers);
+		log.info("wrapper script size: " + script.length);
+		if (script.length > dataOffset) {
 			// if we exceeded the data offset for some reason, increase it.
-			// +1 because the increased data offset may need one more byte in
-			// the script
-			while ((position + 1) > dataOffset) {
+			// Re-render, because the increased data offset may need more bytes
+			// in the script
+			while (script.length > dataOffset) {
 				dataOffset *= 2;
+				context.setDataOffset(dataOffset);
+				script = renderWrapperScript(context, placeholderHash, placeholderHash, placeholderLayers);
 			}
-			channel.position(0);
 			log.info("increased data offset to " + dataOffset);
-			writeWrapperScript(dataOffset, writer);
 		}
 		channel.position(dataOffset);
-		GZIPOutputStream gzos = new GZIPOutputStream(os);
-		return new TarArchiveBuilder(gzos, new UserData());
+		getReport().addTime("wrapper", System.nanoTime() - start);
 	}
 
 	@Override
-	protected void afterExecutableBuilt() throws IOException {
-		Files.setPosixFilePermissions(getOut(), EXECUTABLE_PERMISSION);
+	public void fingerprint(Fingerprint fingerprint) throws IOException {
+		super.fingerprint(fingerprint);
+		fingerprint.putValue("builder.extractionCache", extractionCache);
+		fingerprint.putValue("builder.runtimeStore", runtimeStore);
+		fingerprint.putValue("builder.temporaryExtraction", temporaryExtraction);
+		for (String template : TEMPLATES) {
+			String name = TEMPLATE_PATH + template + ".hbs";
+			fingerprint.putResource(name, getClass().getResource(name));
+		}
 	}
 
-	private void writeWrapperScript(int dataOffset, OutputStreamWriter writer) throws IOException {
-		Handlebars hb = new Handlebars(new ClassPathTemplateLoader("/org/stummi/maven/executable/"));
+	@Override
+	protected boolean isRuntimeHashed() {
+		return runtimeStore.isEnabled();
+	}
+
+	@Override
+	protected void afterExecutableBuilt(BuildContext context, String payloadHash, List<PayloadLayer> layers) throws IOException {
+		getReport().time("wrapper", () -> {
+			byte[] script = renderWrapperScript(context, payloadHash, context.getRuntimeHash(), layers);
+			if (script.length > context.getDataOffset()) {
+				throw new IllegalStateException("wrapper script grew beyond the data offset");
+			}
+			try (SeekableByteChannel channel = Files.newByteChannel(context.getOut(), StandardOpenOption.WRITE)) {
+				channel.write(ByteBuffer.wrap(script));
+			}
+		});
+		for (PayloadLayer layer : layers) {
+			log.info("layer " + layer.getName() + ": " + layer.getLength() + " bytes at " + layer.getOffset()
+					+ (layer.getShards() > 1 ? " in " + layer.getShards() + " shards" : ""));
+		}
+		log.info("payload hash: " + payloadHash);
+		if (runtimeStore.isEnabled()) {
+			log.info("runtime hash: " + context.getRuntimeHash());
+		}
+		getReport().time("permissions", () -> Files.setPosixFilePermissions(context.getOut(), EXECUTABLE_PERMISSION));
+	}
+
+	private byte[] renderWrapperScript(BuildContext context, String payloadHash, String runtimeHash, List<PayloadLayer> layers) throws IOException {
+		SimpleDateFormat buildTimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z");
+		if (getOutputTimestamp() != null) {
+			// keeps the script of reproducible builds independent of the time
+			// zone
+			buildTimeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		}
+
+		Handlebars hb = new Handlebars(new ClassPathTemplateLoader(TEMPLATE_PATH));
 		Template tpl = hb.compile("wrapper");
 		Map<String, Object> ctx = new HashMap<>();
-		ctx.put("project", getMavenProject());
-		ctx.put("dataOffset", dataOffset);
+		ctx.put("project", context.getMavenProject());
+		ctx.put("dataOffset", context.getDataOffset());
 		ctx.put("pluginVersion", PluginVersion.PLUGIN_VERSION);
-		ctx.put("buildTime", new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z").format(new Date()));
-		ctx.put("jarFile", getExecutableJar());
-		tpl.apply(ctx, writer);
-		writer.flush();
+		ctx.put("buildTime", buildTimeFormat.format(new Date(context.getBuildTime() * 1000)));
+		ctx.put("jarFile", context.getExecutableJar());
+		ctx.put("payloadHash", payloadHash);
+		ctx.put("layers", layers);
+		ctx.put("layerAlignment", LAYER_ALIGNMENT);
+		ctx.put("extractionCache", extractionCache);
+		ctx.put("runtimeStore", runtimeStore);
+		ctx.put("temporaryExtraction", temporaryExtraction);
+		ctx.put("runtimeHash", runtimeHash);
+		ctx.put("codec", getCodec());
+		ctx.put("cdsArchive", getCdsArchive() != null ? CDS_ARCHIVE_NAME : null);
+		if (getDependencies() != null) {
+			// the application jar is addressed by $jarFile instead
+			List<String> classPath = classPath(context.getExecutableJar());
+			ctx.put("mainClass", getMainClass());
+			ctx.put("dependencyClassPath", classPath.subList(1, classPath.size()));
+		}
+		return tpl.apply(ctx).getBytes(StandardCharsets.UTF_8);
 	}
 
 }
@@ -0,0 +1,149 @@
+package org.stummi.maven.executable.exebuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Repacks jar files put into the archive with uncompressed (STORED) entries,
+ * including jars nested within them. The payload codec then compresses the
+ * raw class files, across file boundaries, instead of compressing deflated
+ * data a second time, and the JVM reads the classes without inflating them.
+ * <p>
+ * Entries keep their order, names, times and extra fields, so manifests and
+ * signatures stay valid. Entry comments are lost, as they are only kept in
+ * the central directory, which is not read when streaming the jar.
+ */
+@RequiredArgsConstructor
+class RepackingArchiveBuilder implements ArchiveBuilder {
+	private final ArchiveBuilder builder;
+
+	/**
+	 * directory for the repacked jars
+	 */
+	private final Path workDir;
+
+	@Override
+	public void putDirectory(String name) throws IOException {
+		builder.putDirectory(name);
+	}
+
+	@Override
+	public void putFile(String name, long size, InputStream is, boolean executable) throws IOException {
+		if (!isJar(name)) {
+			builder.putFile(name, size, is, executable);
+			return;
+		}
+		ByteArrayOutputStream repacked = new ByteArrayOutputStream();
+		repack(is, repacked);
+		builder.putFile(name, repacked.size(), new ByteArrayInputStream(repacked.toByteArray()), executable);
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path) throws IOException {
+		if (!isJar(name)) {
+			builder.putPhysicalFile(name, path);
+			return;
+		}
+		try (InputStream in = Files.newInputStream(path)) {
+			putPhysicalFile(name, path, in);
+		}
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path, InputStream content) throws IOException {
+		if (!isJar(name)) {
+			builder.putPhysicalFile(name, path, content);
+			return;
+		}
+		Files.createDirectories(workDir);
+		Path repacked = Files.createTempFile(workDir, "repacked", ".jar");
+		try {
+			try (OutputStream out = Files.newOutputStream(repacked)) {
+				repack(content, out);
+			}
+			// the archive entry gets its attributes from the file
+			Files.setLastModifiedTime(repacked, Files.getLastModifiedTime(path));
+			PosixFileAttributeView posix = Files.getFileAttributeView(repacked, PosixFileAttributeView.class);
+			if (posix != null) {
+				posix.setPermissions(Files.readAttributes(path, PosixFileAttributes.class).permissions());
+			}
+			builder.putPhysicalFile(name, repacked);
+		} finally {
+			Files.delete(repacked);
+		}
+	}
+
+	@Override
+	public void putHardLink(String name, String target) throws IOException {
+		builder.putHardLink(name, target);
+	}
+
+	@Override
+	public void putSymbolicLink(String name, String target) throws IOException {
+		builder.putSymbolicLink(name, target);
+	}
+
+	private static boolean isJar(String name) {
+		return name.endsWith(".jar");
+	}
+
+	/**
+	 * copies a jar, storing all entries uncompressed
+	 */
+	static void repack(InputStream in, OutputStream out) throws IOException {
+		ZipInputStream zin = new ZipInputStream(in);
+		ZipOutputStream zout = new ZipOutputStream(out);
+		zout.setMethod(ZipOutputStream.STORED);
+
+		ZipEntry entry;
+		byte[] buffer = new byte[64 * 1024];
+		while ((entry = zin.getNextEntry()) != null) {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			int readLen;
+			while ((readLen = zin.read(buffer)) > 0) {
+				content.write(buffer, 0, readLen);
+			}
+			byte[] data = content.toByteArray();
+			if (isJar(entry.getName())) {
+				content.reset();
+				repack(new ByteArrayInputStream(data), content);
+				data = content.toByteArray();
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			ZipEntry stored = new ZipEntry(entry.getName());
+			stored.setMethod(ZipEntry.STORED);
+			stored.setSize(data.length);
+			stored.setCompressedSize(data.length);
+			stored.setCrc(crc.getValue());
+			stored.setTime(entry.getTime());
+			stored.setExtra(entry.getExtra());
+			zout.putNextEntry(stored);
+			zout.write(data);
+			zout.closeEntry();
+		}
+		// only finishes the zip, the streams belong to the caller
+		zout.finish();
+	}
+
+	@Override
+	public void close() throws IOException {
+		builder.close();
+	}
+}
@@ -0,0 +1,84 @@
+package org.stummi.maven.executable.exebuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import org.stummi.maven.executable.BuildReport;
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Adds the raw and compressed size of every file put into a layer to the
+ * build report
+ */
+@RequiredArgsConstructor
+class ReportingArchiveBuilder implements ArchiveBuilder {
+	private final ArchiveBuilder builder;
+	private final BuildReport report;
+	private final String layer;
+
+	/**
+	 * channel the tar archive is written to
+	 */
+	private final MeteredChannel raw;
+
+	/**
+	 * channel the compressed archive is written to
+	 */
+	private final MeteredChannel compressed;
+
+	private long rawStart;
+	private long compressedStart;
+
+	@Override
+	public void putDirectory(String name) throws IOException {
+		builder.putDirectory(name);
+	}
+
+	@Override
+	public void putFile(String name, long size, InputStream is, boolean executable) throws IOException {
+		startEntry();
+		builder.putFile(name, size, is, executable);
+		endEntry(name);
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path) throws IOException {
+		startEntry();
+		builder.putPhysicalFile(name, path);
+		endEntry(name);
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path, InputStream content) throws IOException {
+		startEntry();
+		builder.putPhysicalFile(name, path, content);
+		endEntry(name);
+	}
+
+	@Override
+	public void putHardLink(String name, String target) throws IOException {
+		builder.putHardLink(name, target);
+	}
+
+	@Override
+	public void putSymbolicLink(String name, String target) throws IOException {
+		builder.putSymbolicLink(name, target);
+	}
+
+	private void startEntry() {
+		rawStart = raw.getBytes();
+		compressedStart = compressed.getBytes();
+	}
+
+	private void endEntry(String name) {
+		report.addEntry(layer, name, raw.getBytes() - rawStart, compressed.getBytes() - compressedStart);
+	}
+
+	@Override
+	public void close() throws IOException {
+		builder.close();
+	}
+}
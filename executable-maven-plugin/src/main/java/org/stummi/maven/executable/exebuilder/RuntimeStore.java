@@ -0,0 +1,33 @@
+package org.stummi.maven.executable.exebuilder;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+import lombok.Data;
+
+/**
+ * Configuration of the machine wide runtime store of the wrapper script. If
+ * enabled, the JRE is extracted only once per machine into a directory named
+ * after the hash of its files, and shared by all executables bundling the
+ * same JRE. Only runtimes extracted by the launching user or root are used,
+ * otherwise the JRE is extracted like the other layers.
+ */
+@Data
+public class RuntimeStore {
+	@Parameter
+	private boolean enabled = false;
+
+	/**
+	 * directory of the runtime store, which is created writable for everyone
+	 * if missing. Can be overridden at launch with the
+	 * EXECUTABLE_RUNTIME_STORE environment variable
+	 */
+	@Parameter
+	private String directory = "/var/tmp/executable-maven-plugin";
+
+	/**
+	 * runtimes extracted by the launching user, and not used by any
+	 * executable for this many days, are removed
+	 */
+	@Parameter
+	private int maxAgeDays = 30;
+}
@@ -0,0 +1,171 @@
+package org.stummi.maven.executable.exebuilder;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+import org.stummi.maven.executable.compression.CompressionPolicy;
+
+import lombok.Getter;
+
+/**
+ * Puts the files which look compressed already, according to a
+ * {@link CompressionPolicy}, into a stored archive, and everything else into
+ * the compressed one. Directories go to both archives, so each can be
+ * extracted on its own.
+ */
+class SegmentingArchiveBuilder implements ArchiveBuilder {
+	private final ArchiveBuilder compressed;
+	private final ArchiveBuilder stored;
+	private final CompressionPolicy policy;
+
+	/**
+	 * files put into the stored archive, as hard links have to be extracted by
+	 * the same archive as their target
+	 */
+	private final Set<String> storedNames = new HashSet<>();
+
+	/**
+	 * number of files put into the stored archive
+	 */
+	@Getter
+	private long storedFiles;
+
+	/**
+	 * content bytes of the files put into the stored archive
+	 */
+	@Getter
+	private long storedBytes;
+
+	SegmentingArchiveBuilder(ArchiveBuilder compressed, ArchiveBuilder stored, CompressionPolicy policy) {
+		this.compressed = compressed;
+		this.stored = stored;
+		this.policy = policy;
+	}
+
+	@Override
+	public void putDirectory(String name) throws IOException {
+		compressed.putDirectory(name);
+		stored.putDirectory(name);
+	}
+
+	@Override
+	public void putFile(String name, long size, InputStream is, boolean executable) throws IOException {
+		if (!policy.isCandidate(name)) {
+			compressed.putFile(name, size, is, executable);
+			return;
+		}
+		InputStream content = sampleable(is);
+		builderFor(name, size, looksCompressed(content, size, true)).putFile(name, size, content, executable);
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path) throws IOException {
+		if (Files.isDirectory(path)) {
+			compressed.putPhysicalFile(name, path);
+			stored.putPhysicalFile(name, path);
+			return;
+		}
+		if (!policy.isCandidate(name)) {
+			compressed.putPhysicalFile(name, path);
+			return;
+		}
+		// sampled separately, so the file can still be transferred as a whole
+		long size = Files.size(path);
+		boolean compressedContent;
+		try (InputStream in = Files.newInputStream(path)) {
+			compressedContent = looksCompressed(in, size, false);
+		}
+		builderFor(name, size, compressedContent).putPhysicalFile(name, path);
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path, InputStream content) throws IOException {
+		if (Files.isDirectory(path)) {
+			compressed.putPhysicalFile(name, path, content);
+			stored.putPhysicalFile(name, path, content);
+			return;
+		}
+		if (!policy.isCandidate(name)) {
+			compressed.putPhysicalFile(name, path, content);
+			return;
+		}
+		long size = Files.size(path);
+		InputStream sampleable = sampleable(content);
+		builderFor(name, size, looksCompressed(sampleable, size, true)).putPhysicalFile(name, path, sampleable);
+	}
+
+	@Override
+	public void putHardLink(String name, String target) throws IOException {
+		if (storedNames.contains(target)) {
+			storedNames.add(name);
+			stored.putHardLink(name, target);
+		} else {
+			compressed.putHardLink(name, target);
+		}
+	}
+
+	@Override
+	public void putSymbolicLink(String name, String target) throws IOException {
+		compressed.putSymbolicLink(name, target);
+	}
+
+	/**
+	 * buffers the given stream to reset it after sampling. Streams supporting
+	 * marks themselves are buffered as well, as filters like digesting
+	 * streams report the support of the stream they read from
+	 */
+	private InputStream sampleable(InputStream in) {
+		return new BufferedInputStream(in, policy.getSampleSize());
+	}
+
+	/**
+	 * samples the start of the given content
+	 * 
+	 * @param reset
+	 *            whether to reset the content to its start afterwards
+	 */
+	private boolean looksCompressed(InputStream content, long size, boolean reset) throws IOException {
+		byte[] sample = new byte[(int) Math.min(size, policy.getSampleSize())];
+		if (reset) {
+			content.mark(sample.length);
+		}
+		int length = 0;
+		int readLen;
+		while (length < sample.length && (readLen = content.read(sample, length, sample.length - length)) > 0) {
+			length += readLen;
+		}
+		if (reset) {
+			content.reset();
+		}
+		return policy.isCompressed(sample, length);
+	}
+
+	/**
+	 * returns the archive a file goes to, counting the stored ones
+	 */
+	private ArchiveBuilder builderFor(String name, long size, boolean compressedContent) {
+		if (!compressedContent) {
+			return compressed;
+		}
+		storedNames.add(name);
+		storedFiles++;
+		storedBytes += size;
+		return stored;
+	}
+
+	@Override
+	public void close() throws IOException {
+		// both archives are closed, even if closing the first one failed
+		try {
+			compressed.close();
+		} finally {
+			stored.close();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package org.stummi.maven.executable.exebuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+
+/**
+ * Distributes the files put into a layer over several archives, the shards,
+ * which are extracted concurrently by the wrapper. Every file goes to the
+ * shard with the least uncompressed bytes so far. Directories go to all
+ * shards, so each shard can be extracted on its own.
+ */
+class ShardingArchiveBuilder implements ArchiveBuilder {
+	private final List<ArchiveBuilder> shards = new ArrayList<>();
+	private final List<Long> shardSizes = new ArrayList<>();
+
+	/**
+	 * shard of every file, as hard links have to be extracted by the same
+	 * archive as their target
+	 */
+	private final Map<String, ArchiveBuilder> fileShards = new HashMap<>();
+
+	void addShard(ArchiveBuilder shard) {
+		shards.add(shard);
+		shardSizes.add(0L);
+	}
+
+	/**
+	 * uncompressed bytes of file content put into each shard
+	 */
+	List<Long> getShardSizes() {
+		return shardSizes;
+	}
+
+	@Override
+	public void putDirectory(String name) throws IOException {
+		for (ArchiveBuilder shard : shards) {
+			shard.putDirectory(name);
+		}
+	}
+
+	@Override
+	public void putFile(String name, long size, InputStream is, boolean executable) throws IOException {
+		shardFor(name, size).putFile(name, size, is, executable);
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path) throws IOException {
+		for (ArchiveBuilder shard : shardsFor(name, path)) {
+			shard.putPhysicalFile(name, path);
+		}
+	}
+
+	@Override
+	public void putPhysicalFile(String name, Path path, InputStream content) throws IOException {
+		for (ArchiveBuilder shard : shardsFor(name, path)) {
+			shard.putPhysicalFile(name, path, content);
+		}
+	}
+
+	private List<ArchiveBuilder> shardsFor(String name, Path path) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+		return attrs.isDirectory() ? shards : Collections.singletonList(shardFor(name, attrs.size()));
+	}
+
+	@Override
+	public void putHardLink(String name, String target) throws IOException {
+		ArchiveBuilder shard = fileShards.get(target);
+		if (shard == null) {
+			throw new IOException("hard link " + name + " to unknown file " + target);
+		}
+		fileShards.put(name, shard);
+		shard.putHardLink(name, target);
+	}
+
+	@Override
+	public void putSymbolicLink(String name, String target) throws IOException {
+		// the target may be extracted by any shard, the link dangles until then
+		shardFor(name, 0).putSymbolicLink(name, target);
+	}
+
+	private ArchiveBuilder shardFor(String name, long size) {
+		int smallest = 0;
+		for (int idx = 1; idx < shards.size(); ++idx) {
+			if (shardSizes.get(idx) < shardSizes.get(smallest)) {
+				smallest = idx;
+			}
+		}
+		shardSizes.set(smallest, shardSizes.get(smallest) + size);
+		fileShards.put(name, shards.get(smallest));
+		return shards.get(smallest);
+	}
+
+	@Override
+	public void close() throws IOException {
+		// every shard is closed, even if closing another one failed
+		IOException failure = null;
+		for (ArchiveBuilder shard : shards) {
+			try {
+				shard.close();
+			} catch (IOException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package org.stummi.maven.executable.exebuilder;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+import lombok.Data;
+
+/**
+ * Configuration of the directory the wrapper script extracts the payload to
+ * on every launch, if the extraction cache is disabled. The directory is
+ * removed in the background once the application exited.
+ */
+@Data
+public class TemporaryExtraction {
+	/**
+	 * extract into a memory backed file system, $XDG_RUNTIME_DIR or /dev/shm,
+	 * if it has room for the extracted payload and enough memory stays
+	 * available. Otherwise, and by default, the payload is extracted into the
+	 * temporary directory, $TMPDIR or /tmp
+	 */
+	@Parameter
+	private boolean preferMemory = false;
+
+	/**
+	 * memory which has to stay available after extracting into memory
+	 */
+	@Parameter
+	private int memoryReserveMb = 1024;
+
+	public long getMemoryReserveKb() {
+		return memoryReserveMb * 1024L;
+	}
+}
@@ -0,0 +1,320 @@
+package org.stummi.maven.executable.jreprovider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import org.stummi.maven.executable.CacheLocks;
+import org.stummi.maven.executable.ChecksumVerifier;
+import org.stummi.maven.executable.Checksums;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * User wide cache of downloaded files, shared between projects and builds.
+ * <p>
+ * Files with known checksums are stored under their checksum, so they are
+ * downloaded only once no matter which URL they come from, and never
+ * revalidated. Other files are stored under a hash of their URL and
+ * revalidated with the ETag or modification time of the last download.
+ * <p>
+ * Downloads go to a partial file first, which is only renamed to its final
+ * name after it is complete and its checksums are verified. Interrupted
+ * downloads are resumed with HTTP range requests.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class DownloadCache {
+	private static final String PART_SUFFIX = ".part";
+	private static final String META_SUFFIX = ".properties";
+	private static final String LOCK_SUFFIX = ".lock";
+
+	private static final String META_URL = "url";
+	private static final String META_ETAG = "etag";
+	private static final String META_LAST_MODIFIED = "lastModified";
+
+	private static final int CONNECT_TIMEOUT_MILLIS = 30_000;
+	private static final int READ_TIMEOUT_MILLIS = 60_000;
+
+	private final Path directory;
+
+	@Value
+	public static class Download {
+		private final Path file;
+		/**
+		 * whether the file was just downloaded and its checksums verified
+		 * while doing so, so there is no need to verify them again
+		 */
+		private final boolean verified;
+	}
+
+	/**
+	 * returns the cached file for the given URL, downloading it if necessary
+	 *
+	 * @param checksums
+	 *            expected checksums of the file by algorithm, may be
+	 *            {@code null} or empty
+	 */
+	public Download get(String url, Map<String, String> checksums) throws IOException {
+		boolean contentAddressed = isContentAddressed(checksums);
+		Path file = path(url, checksums);
+		String key = file.getFileName().toString();
+		Files.createDirectories(directory);
+
+		// concurrent builds, in other processes or other modules of a parallel
+		// build, wait for each other instead of downloading the same file into
+		// the same partial file
+		return CacheLocks.withLock(directory.resolve(key + LOCK_SUFFIX), () -> {
+			if (Files.isRegularFile(file)) {
+				if (contentAddressed) {
+					log.info("using cached download " + file);
+					return new Download(file, false);
+				}
+				if (isUpToDate(url, file)) {
+					return new Download(file, false);
+				}
+			}
+
+			Path part = file.resolveSibling(file.getFileName() + PART_SUFFIX);
+			ChecksumVerifier verifier = download(url, part, checksums);
+			if (contentAddressed) {
+				try {
+					verifier.verify("downloaded file");
+				} catch (IOException e) {
+					Files.deleteIfExists(part);
+					Files.deleteIfExists(metaFile(part));
+					throw e;
+				}
+			}
+			Files.move(metaFile(part), metaFile(file), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(part, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			return new Download(file, contentAddressed);
+		});
+	}
+
+	/**
+	 * removes a cached file, e.g. because it turned out to be corrupt
+	 */
+	public void remove(String url, Map<String, String> checksums) throws IOException {
+		Path file = path(url, checksums);
+		Files.createDirectories(directory);
+		CacheLocks.withLock(directory.resolve(file.getFileName() + LOCK_SUFFIX), () -> {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(metaFile(file));
+			return null;
+		});
+	}
+
+	/**
+	 * returns the location of the given file within the cache, regardless of
+	 * whether it is downloaded yet
+	 */
+	public Path path(String url, Map<String, String> checksums) throws IOException {
+		return directory.resolve(isContentAddressed(checksums) ? checksumKey(checksums) : "url-" + hash(url));
+	}
+
+	private static boolean isContentAddressed(Map<String, String> checksums) {
+		return checksums != null && !checksums.isEmpty();
+	}
+
+	/**
+	 * revalidates a cached file. If the server can't be reached, the cached
+	 * file is used anyway
+	 */
+	private boolean isUpToDate(String url, Path file) throws IOException {
+		Properties meta = loadMeta(file);
+		try {
+			URLConnection connection = openConnection(url);
+			if (!(connection instanceof HttpURLConnection)) {
+				return true;
+			}
+			HttpURLConnection http = (HttpURLConnection) connection;
+			http.setRequestMethod("HEAD");
+			setValidators(http, meta, "If-None-Match", "If-Modified-Since");
+			int status = http.getResponseCode();
+			http.disconnect();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED || status == HttpURLConnection.HTTP_OK && sameValidators(meta, http)) {
+				log.info("cached download " + file + " is up to date");
+				return true;
+			}
+			if (status == HttpURLConnection.HTTP_OK && !hasValidators(meta)) {
+				log.info("using cached download " + file + ", the server provides no means of revalidation");
+				return true;
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				log.warn("could not revalidate cached download " + file + ", HTTP status " + status + ", using it anyway");
+				return true;
+			}
+			log.info(url + " changed since it was cached");
+			return false;
+		} catch (IOException e) {
+			log.warn("could not revalidate cached download " + file + ", using it anyway: " + e);
+			return true;
+		}
+	}
+
+	/**
+	 * downloads the URL into the partial file, resuming a previous download
+	 * if possible. The checksums are calculated while downloading, so the file
+	 * doesn't need to be read again for verification.
+	 */
+	private ChecksumVerifier download(String url, Path part, Map<String, String> checksums) throws IOException {
+		Properties partMeta = Files.isRegularFile(part) ? loadMeta(part) : new Properties();
+		long resumeFrom = Files.isRegularFile(part) && url.equals(partMeta.getProperty(META_URL)) && hasValidators(partMeta) ? Files.size(part) : 0;
+
+		URLConnection connection = openConnection(url);
+		boolean append = false;
+		if (connection instanceof HttpURLConnection) {
+			HttpURLConnection http = (HttpURLConnection) connection;
+			if (resumeFrom > 0) {
+				// If-Range makes the server send the whole file if it changed
+				// since the partial download started
+				http.setRequestProperty("Range", "bytes=" + resumeFrom + "-");
+				setValidators(http, partMeta, "If-Range", "If-Range");
+			}
+			int status = http.getResponseCode();
+			if (status == HttpURLConnection.HTTP_PARTIAL) {
+				append = true;
+			} else if (status == 416 && resumeFrom > 0) {
+				// the range is not satisfiable, so the partial file is broken
+				http.disconnect();
+				Files.delete(part);
+				return download(url, part, checksums);
+			} else if (status != HttpURLConnection.HTTP_OK) {
+				throw new IOException("download of " + url + " failed with HTTP status " + status);
+			}
+		}
+
+		Properties meta = new Properties();
+		meta.setProperty(META_URL, url);
+		if (append) {
+			copyValidator(partMeta, meta, META_ETAG);
+			copyValidator(partMeta, meta, META_LAST_MODIFIED);
+			log.info("resume download: " + url + " to " + part + " at " + resumeFrom + " bytes...");
+		} else {
+			if (connection.getHeaderField("ETag") != null) {
+				meta.setProperty(META_ETAG, connection.getHeaderField("ETag"));
+			}
+			if (connection.getHeaderField("Last-Modified") != null) {
+				meta.setProperty(META_LAST_MODIFIED, connection.getHeaderField("Last-Modified"));
+			}
+			log.info("download: " + url + " to " + part + "...");
+		}
+		// store the validators first, so an interrupted download can be resumed
+		storeMeta(part, meta);
+
+		ChecksumVerifier verifier = new ChecksumVerifier(checksums);
+		if (append) {
+			try (InputStream in = Files.newInputStream(part)) {
+				verifier.update(in);
+			}
+		}
+
+		StandardOpenOption mode = append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+		try (InputStream in = connection.getInputStream();
+				OutputStream out = verifier.wrap(Files.newOutputStream(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode))) {
+			byte[] buffer = new byte[64 * 1024];
+			int readLen;
+			while ((readLen = in.read(buffer)) > 0) {
+				out.write(buffer, 0, readLen);
+			}
+		}
+
+		long expectedLength = connection.getContentLengthLong();
+		if (expectedLength >= 0 && Files.size(part) != (append ? resumeFrom : 0) + expectedLength) {
+			throw new IOException("download of " + url + " is incomplete");
+		}
+		return verifier;
+	}
+
+	private static URLConnection openConnection(String url) throws IOException {
+		URLConnection connection = new URL(url).openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+		connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+		return connection;
+	}
+
+	private static boolean hasValidators(Properties meta) {
+		return meta.getProperty(META_ETAG) != null || meta.getProperty(META_LAST_MODIFIED) != null;
+	}
+
+	/**
+	 * for servers ignoring conditional requests
+	 */
+	private static boolean sameValidators(Properties meta, URLConnection connection) {
+		if (meta.getProperty(META_ETAG) != null) {
+			return meta.getProperty(META_ETAG).equals(connection.getHeaderField("ETag"));
+		}
+		return meta.getProperty(META_LAST_MODIFIED) != null && meta.getProperty(META_LAST_MODIFIED).equals(connection.getHeaderField("Last-Modified"));
+	}
+
+	private static void setValidators(HttpURLConnection http, Properties meta, String etagHeader, String lastModifiedHeader) {
+		// prefer the ETag, as it is the stronger validator
+		if (meta.getProperty(META_ETAG) != null) {
+			http.setRequestProperty(etagHeader, meta.getProperty(META_ETAG));
+		} else if (meta.getProperty(META_LAST_MODIFIED) != null) {
+			http.setRequestProperty(lastModifiedHeader, meta.getProperty(META_LAST_MODIFIED));
+		}
+	}
+
+	private static void copyValidator(Properties from, Properties to, String key) {
+		if (from.getProperty(key) != null) {
+			to.setProperty(key, from.getProperty(key));
+		}
+	}
+
+	private static Path metaFile(Path file) {
+		return file.resolveSibling(file.getFileName() + META_SUFFIX);
+	}
+
+	private static Properties loadMeta(Path file) throws IOException {
+		Properties meta = new Properties();
+		Path metaFile = metaFile(file);
+		if (Files.isRegularFile(metaFile)) {
+			try (InputStream in = Files.newInputStream(metaFile)) {
+				meta.load(in);
+			}
+		}
+		return meta;
+	}
+
+	private static void storeMeta(Path file, Properties meta) throws IOException {
+		try (OutputStream out = Files.newOutputStream(metaFile(file))) {
+			meta.store(out, "executable-maven-plugin download");
+		}
+	}
+
+	/**
+	 * cache key of a file with known checksums, using the longest, and so
+	 * presumably strongest one. The checksum becomes part of the file name,
+	 * so it has to be hex
+	 */
+	private static String checksumKey(Map<String, String> checksums) throws IOException {
+		Entry<String, String> strongest = checksums.entrySet().stream() //
+				.max(Comparator.comparingInt((Entry<String, String> e) -> e.getValue().trim().length()).thenComparing(Entry::getKey)) //
+				.get();
+		String value = strongest.getValue().trim().toLowerCase();
+		if (!value.matches("[0-9a-f]+")) {
+			throw new IOException("invalid " + strongest.getKey() + " checksum, expected a hex value: '" + strongest.getValue() + "'");
+		}
+		return strongest.getKey().toLowerCase().replaceAll("[^a-z0-9]", "") + "-" + value;
+	}
+
+	private static String hash(String s) throws IOException {
+		return Checksums.toHex(Checksums.newDigest("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+	}
+}
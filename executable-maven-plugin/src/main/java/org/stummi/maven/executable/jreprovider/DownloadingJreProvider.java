@@ -1,23 +1,22 @@
 package org.stummi.maven.executable.jreprovider;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.math.BigInteger;
-import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.TreeMap;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.kamranzafar.jtar.TarEntry;
 import org.kamranzafar.jtar.TarInputStream;
+import org.stummi.maven.executable.BuildReport;
+import org.stummi.maven.executable.ChecksumVerifier;
+import org.stummi.maven.executable.Fingerprint;
 import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
 
 import lombok.extern.slf4j.Slf4j;
@@ -40,34 +39,75 @@ public class DownloadingJreProvider implements JreProvider {
 	@Parameter
 	private String archiveRoot;
 
+	/**
+	 * directory of the download cache. Defaults to
+	 * ~/.m2/executable-maven-plugin/downloads, shared between all projects
+	 */
 	@Parameter
 	private String downloadDir;
 
 	@Override
 	public void addToArchive(MavenProject project, ArchiveBuilder builder) throws IOException {
-		Path dlDir = downloadDir != null ? Paths.get(downloadDir) : Paths.get(project.getBuild().getDirectory(), "jre_downloads");
-		Files.createDirectories(dlDir);
-
-		String safeName = url.replaceAll("[\\/\\<\\>\\:\\\"\\\\\\|\\?\\*]", "_");
-		Path dlDest = dlDir.resolve(safeName);
-
-		if (!Files.exists(dlDest)) {
-			download(url, dlDest);
-		}
+		addToArchive(project, builder, new BuildReport());
+	}
 
-		if (checksum != null) {
-			for (Entry<String, String> e : checksum.entrySet()) {
-				assertCorrectChecksum(dlDest, e.getKey(), e.getValue());
-			}
-		} else {
+	@Override
+	public void addToArchive(MavenProject project, ArchiveBuilder builder, BuildReport report) throws IOException {
+		if (checksum == null) {
 			log.warn("No checksums defined for downloaded archive. Its recommended to validate downloaded files. "
 					+ "If you really want this, add add an empty <checksum /> tag to the configuration to get rid of this warning");
 		}
+		DownloadCache downloadCache = downloadCache();
+		long downloadStart = System.nanoTime();
+		DownloadCache.Download download = downloadCache.get(url, checksum);
+		report.addTime("jre.download", System.nanoTime() - downloadStart);
+		Path dlDest = download.getFile();
+		if (download.isVerified()) {
+			try (InputStream is = new BufferedInputStream(Files.newInputStream(dlDest), 64 * 1024)) {
+				appendJreDataFromArchive(is, builder);
+			}
+			return;
+		}
 
-		try (InputStream is = Files.newInputStream(dlDest)) {
+		// a cached archive is verified while extracting it, which detects
+		// corrupted cache entries without reading the file twice. The entries
+		// are added before the checksum is known, but a mismatch fails the
+		// build, so the executable is not used, and rebuilt by the next build
+		// as its fingerprint is only stored after a successful build
+		ChecksumVerifier verifier = new ChecksumVerifier(checksum);
+		IOException extractionError = null;
+		try (InputStream is = verifier.wrap(new BufferedInputStream(Files.newInputStream(dlDest), 64 * 1024))) {
 			appendJreDataFromArchive(is, builder);
+		} catch (IOException e) {
+			extractionError = e;
 		}
+		report.addTime("jre.checksum", verifier.getNanos());
+		try {
+			verifier.verify("cached download " + dlDest);
+		} catch (IOException e) {
+			downloadCache.remove(url, checksum);
+			if (extractionError != null) {
+				e.addSuppressed(extractionError);
+			}
+			throw e;
+		}
+		if (extractionError != null) {
+			throw extractionError;
+		}
+	}
+
+	@Override
+	public void fingerprint(MavenProject project, Fingerprint fingerprint) throws IOException {
+		fingerprint.putValue("jre.provider", "download");
+		fingerprint.putValue("jre.download.url", url);
+		fingerprint.putValue("jre.download.checksum", checksum != null ? new TreeMap<>(checksum) : null);
+		fingerprint.putValue("jre.download.stripParts", stripParts);
+		fingerprint.putValue("jre.download.archiveRoot", archiveRoot);
+		fingerprint.putFile(downloadCache().path(url, checksum));
+	}
 
+	private DownloadCache downloadCache() {
+		return new DownloadCache(Paths.get(downloadDir != null ? downloadDir : System.getProperty("user.home") + "/.m2/executable-maven-plugin/downloads"));
 	}
 
 	private void appendJreDataFromArchive(InputStream is, ArchiveBuilder builder) throws IOException {
@@ -81,7 +121,7 @@ public class DownloadingJreProvider implements JreProvider {
 			root = root.substring(1);
 		}
 
-		if (!root.endsWith("/")) {
+		if (!root.isEmpty() && !root.endsWith("/")) {
 			root += "/";
 		}
 
@@ -120,47 +160,4 @@ public class DownloadingJreProvider implements JreProvider {
 			}
 		}
 	}
-
-	private static void assertCorrectChecksum(Path dlDest, String algorithm, String sum) throws IOException {
-		MessageDigest digest;
-		try {
-			digest = MessageDigest.getInstance(algorithm.toUpperCase());
-		} catch (NoSuchAlgorithmException e) {
-			throw new IOException("unknown checksum algorhithm: " + algorithm, e);
-		}
-		try (InputStream in = Files.newInputStream(dlDest)) {
-			byte[] buffer = new byte[1024];
-			int readLen;
-			while ((readLen = in.read(buffer)) > 0) {
-				digest.update(buffer, 0, readLen);
-			}
-		}
-
-		byte[] data = digest.digest();
-		String calculatedSum = createHashSum(data);
-		if (!calculatedSum.equalsIgnoreCase(sum)) {
-			throw new IOException(algorithm + " hashsum of downloaded file " + (calculatedSum) + " does not equals expected (" + sum + ")");
-		}
-	}
-
-	private static String createHashSum(byte[] data) {
-		BigInteger bigInt = new BigInteger(1, data);
-		String hash = bigInt.toString(16);
-		StringBuilder sb = new StringBuilder();
-		for (int idx = 0; idx < (data.length * 2 - hash.length()); ++idx) {
-			sb.append("0");
-		}
-		return sb.append(hash).toString();
-	}
-
-	private static void download(String url, Path dlDest) throws IOException {
-		log.info("download: " + url + " to " + dlDest + "...");
-		try (InputStream in = new URL(url).openConnection().getInputStream(); OutputStream out = Files.newOutputStream(dlDest)) {
-			byte[] buffer = new byte[1024];
-			int readLen;
-			while ((readLen = in.read(buffer)) > 0) {
-				out.write(buffer, 0, readLen);
-			}
-		}
-	}
 }
@@ -0,0 +1,232 @@
+package org.stummi.maven.executable.jreprovider;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.stummi.maven.executable.BuildReport;
+import org.stummi.maven.executable.Fingerprint;
+import org.stummi.maven.executable.JavaVersions;
+import org.stummi.maven.executable.PathUtils;
+import org.stummi.maven.executable.Processes;
+import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * JRE Provider implementation which creates a minimal runtime image with
+ * jlink. The required modules are determined by running jdeps over the
+ * application jar and its runtime dependencies. Requires a JDK 11 or newer.
+ */
+@Slf4j
+public class JlinkJreProvider implements JreProvider {
+	/**
+	 * the JDK to take jdeps, jlink and the modules from. Defaults to the JDK
+	 * running maven
+	 */
+	@Parameter
+	private String javaHome;
+
+	/**
+	 * modules to add in addition to the detected ones
+	 */
+	@Parameter
+	private List<String> modules;
+
+	/**
+	 * run jdeps to determine the required modules. If disabled, only the
+	 * configured modules are added
+	 */
+	@Parameter
+	private boolean detectModules = true;
+
+	/**
+	 * value of the jdeps --multi-release option for multi release jars
+	 */
+	@Parameter
+	private String multiRelease = "base";
+
+	@Parameter
+	private boolean stripDebug = true;
+
+	@Parameter
+	private boolean noHeaderFiles = true;
+
+	@Parameter
+	private boolean noManPages = true;
+
+	/**
+	 * create the default class data sharing archive of the runtime image,
+	 * which is required for application class data sharing. Only supported by
+	 * JDK 18 or newer, ignored for older ones
+	 */
+	@Parameter
+	private boolean generateCdsArchive = true;
+
+	/**
+	 * value of the jlink --compress option. Unset by default, because the
+	 * payload gets compressed anyway
+	 */
+	@Parameter
+	private String compress;
+
+	/**
+	 * additional options passed to jlink
+	 */
+	@Parameter
+	private List<String> jlinkOptions;
+
+	@Override
+	public void addToArchive(MavenProject project, ArchiveBuilder builder) throws IOException {
+		addToArchive(project, builder, new BuildReport());
+	}
+
+	@Override
+	public void addToArchive(MavenProject project, ArchiveBuilder builder, BuildReport report) throws IOException {
+		Path jdk = findJdk();
+		Set<String> requiredModules = requiredModules(project, jdk);
+
+		// jlink creates the output directory itself. A directory of its own
+		// keeps executables with different runtime images built at the same
+		// time apart
+		Path buildDir = Paths.get(project.getBuild().getDirectory());
+		Files.createDirectories(buildDir);
+		Path workDir = Files.createTempDirectory(buildDir, "jlink-jre");
+		Path output = workDir.resolve("jre");
+
+		List<String> cmd = new ArrayList<>(Arrays.asList(tool(jdk, "jlink").toString(), //
+				"--module-path", jdk.resolve("jmods").toString(), //
+				"--add-modules", String.join(",", requiredModules), //
+				"--output", output.toString()));
+		if (stripDebug) {
+			cmd.add("--strip-debug");
+		}
+		if (noHeaderFiles) {
+			cmd.add("--no-header-files");
+		}
+		if (noManPages) {
+			cmd.add("--no-man-pages");
+		}
+		if (generateCdsArchive && JavaVersions.featureVersion(jdk) >= 18) {
+			cmd.add("--generate-cds-archive");
+		}
+		if (compress != null) {
+			cmd.add("--compress=" + compress);
+		}
+		if (jlinkOptions != null) {
+			cmd.addAll(jlinkOptions);
+		}
+
+		log.info("creating runtime image with modules " + requiredModules);
+		try {
+			report.time("jre.jlink", () -> Processes.run(cmd));
+			builder.putPhysicalDirectoryRecursive("jre", output);
+		} finally {
+			PathUtils.deleteRecursive(workDir);
+		}
+	}
+
+	@Override
+	public void fingerprint(MavenProject project, Fingerprint fingerprint) throws IOException {
+		Path jdk = findJdk();
+		fingerprint.putValue("jre.provider", "jlink");
+		fingerprint.putValue("jre.jlink.jdk", jdk.toAbsolutePath());
+		// the inputs of jdeps instead of its result, so checking whether the
+		// executable is up to date doesn't run it
+		fingerprint.putValue("jre.jlink.modules", modules != null ? new TreeSet<>(modules) : null);
+		fingerprint.putValue("jre.jlink.detectModules", detectModules);
+		if (detectModules) {
+			fingerprint.putValue("jre.jlink.multiRelease", multiRelease);
+			fingerprint.putFile(applicationJar(project));
+			List<Path> classPath = classPath(project);
+			fingerprint.putValue("jre.jlink.classPath", classPath);
+			for (Path entry : classPath) {
+				if (Files.isDirectory(entry)) {
+					fingerprint.putDirectory(entry);
+				} else {
+					fingerprint.putFile(entry);
+				}
+			}
+		}
+		fingerprint.putValue("jre.jlink.options", Arrays.asList(stripDebug, noHeaderFiles, noManPages, generateCdsArchive, compress, jlinkOptions));
+		fingerprint.putFile(jdk.resolve("release"));
+		fingerprint.putDirectory(jdk.resolve("jmods"));
+	}
+
+	private Path findJdk() throws IOException {
+		Path jdk = Paths.get(javaHome != null ? javaHome : System.getProperty("java.home"));
+		if (!Files.isDirectory(jdk.resolve("jmods")) || !Files.isExecutable(tool(jdk, "jlink"))) {
+			throw new IOException(jdk + " seems to not point to a JDK with jlink and jmods");
+		}
+		return jdk;
+	}
+
+	private Set<String> requiredModules(MavenProject project, Path jdk) throws IOException {
+		Set<String> ret = new TreeSet<>();
+		if (modules != null) {
+			ret.addAll(modules);
+		}
+
+		if (detectModules) {
+			List<String> classPath = classPath(project).stream().map(Path::toString).collect(Collectors.toList());
+
+			List<String> cmd = new ArrayList<>(Arrays.asList(tool(jdk, "jdeps").toString(), //
+					"--print-module-deps", "--ignore-missing-deps", //
+					"--multi-release", multiRelease));
+			if (!classPath.isEmpty()) {
+				cmd.add("--class-path");
+				cmd.add(String.join(File.pathSeparator, classPath));
+			}
+			cmd.add(applicationJar(project).toString());
+			cmd.addAll(classPath);
+
+			String output = Processes.run(cmd).trim();
+			if (!output.isEmpty()) {
+				ret.addAll(Arrays.asList(output.split(",")));
+			}
+		}
+
+		if (ret.isEmpty()) {
+			// a runtime needs at least the base module
+			ret.add("java.base");
+		}
+		return ret;
+	}
+
+	/**
+	 * the runtime dependencies of the project, which jdeps analyzes along
+	 * with the application jar
+	 */
+	private static List<Path> classPath(MavenProject project) {
+		@SuppressWarnings("unchecked")
+		Set<Artifact> artifacts = project.getArtifacts();
+		return artifacts.stream() //
+				.filter(a -> Artifact.SCOPE_COMPILE.equals(a.getScope()) || Artifact.SCOPE_RUNTIME.equals(a.getScope())) //
+				.map(Artifact::getFile) //
+				.filter(f -> f != null) //
+				.map(f -> f.getAbsoluteFile().toPath()) //
+				.collect(Collectors.toList());
+	}
+
+	private static Path applicationJar(MavenProject project) {
+		if (project.getArtifact() != null && project.getArtifact().getFile() != null && project.getArtifact().getFile().isFile()) {
+			return project.getArtifact().getFile().toPath();
+		}
+		return Paths.get(project.getBuild().getDirectory(), project.getBuild().getFinalName() + ".jar");
+	}
+
+	private static Path tool(Path jdk, String name) {
+		return jdk.resolve("bin").resolve(name);
+	}
+}
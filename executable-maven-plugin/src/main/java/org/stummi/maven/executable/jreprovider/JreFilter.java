@@ -0,0 +1,150 @@
+package org.stummi.maven.executable.jreprovider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Configuration of the JRE files left out of the executable, applied to the
+ * JRE of every provider. Patterns are globs relative to the JRE root, where
+ * {@code *} and {@code ?} match within a name, {@code **} matches across
+ * directories and <code>{a,b}</code> matches either alternative.
+ * <p>
+ * Files and directories matching an exclude, and everything within such a
+ * directory, are left out. If includes are given, only files matching one of
+ * them are kept.
+ */
+@Data
+public class JreFilter {
+	private static final Map<String, List<String>> PRESETS = new LinkedHashMap<>();
+
+	static {
+		PRESETS.put("sources", Arrays.asList("src.zip", "lib/src.zip", "javafx-src.zip"));
+		PRESETS.put("docs", Arrays.asList("man/**", "demo/**", "sample/**"));
+		PRESETS.put("headers", Arrays.asList("include/**"));
+		PRESETS.put("debug", Arrays.asList("**.diz", "**.debuginfo", "**.pdb", "**.map"));
+		PRESETS.put("jmods", Arrays.asList("jmods/**"));
+		PRESETS.put("tools",
+				Arrays.asList("bin/{appletviewer,extcheck,idlj,jaotc,jar,jarsigner,javac,javadoc,javah,javap,javapackager,jconsole,jdeprscan,jdeps,jhsdb,"
+						+ "jimage,jlink,jmod,jpackage,jshell,native2ascii,rmic,schemagen,serialver,wsgen,wsimport,xjc}{,.exe}", //
+						"lib/ct.sym", "lib/tools.jar"));
+
+		List<String> runtimeOnly = new ArrayList<>();
+		PRESETS.values().forEach(runtimeOnly::addAll);
+		PRESETS.put("runtime-only", runtimeOnly);
+	}
+
+	/**
+	 * built-in excludes: {@code sources}, {@code docs}, {@code headers},
+	 * {@code debug}, {@code jmods}, {@code tools}, or {@code runtime-only} for
+	 * all of them
+	 */
+	@Parameter
+	private List<String> presets = new ArrayList<>();
+
+	@Parameter
+	private List<String> includes = new ArrayList<>();
+
+	@Parameter
+	private List<String> excludes = new ArrayList<>();
+
+	/**
+	 * keep all files, only report the bytes every rule would remove
+	 */
+	@Parameter
+	private boolean dryRun = false;
+
+	/**
+	 * a single include or exclude pattern
+	 */
+	@RequiredArgsConstructor
+	public static class Rule {
+		@Getter
+		private final String description;
+		private final Pattern pattern;
+
+		public boolean matches(String path) {
+			return pattern.matcher(path).matches();
+		}
+	}
+
+	public boolean isEnabled() {
+		return !isEmpty(presets) || !isEmpty(includes) || !isEmpty(excludes);
+	}
+
+	public List<Rule> excludeRules() {
+		List<Rule> ret = new ArrayList<>();
+		if (presets != null) {
+			for (String preset : presets) {
+				List<String> patterns = PRESETS.get(preset);
+				if (patterns == null) {
+					throw new IllegalArgumentException("unknown JRE filter preset " + preset + ", known are " + PRESETS.keySet());
+				}
+				patterns.forEach(p -> ret.add(new Rule("exclude " + p + " (" + preset + ")", glob(p))));
+			}
+		}
+		if (excludes != null) {
+			excludes.forEach(p -> ret.add(new Rule("exclude " + p, glob(p))));
+		}
+		return ret;
+	}
+
+	public List<Rule> includeRules() {
+		List<Rule> ret = new ArrayList<>();
+		if (includes != null) {
+			includes.forEach(p -> ret.add(new Rule("include " + p, glob(p))));
+		}
+		return ret;
+	}
+
+	private static boolean isEmpty(List<String> list) {
+		return list == null || list.isEmpty();
+	}
+
+	/**
+	 * translates a glob to a regular expression. Paths are always separated
+	 * by {@code /}, independent of the platform
+	 */
+	private static Pattern glob(String glob) {
+		StringBuilder sb = new StringBuilder();
+		int braces = 0;
+		for (int idx = 0; idx < glob.length(); ++idx) {
+			char c = glob.charAt(idx);
+			if (glob.startsWith("**/", idx)) {
+				// any number of directories, including none
+				sb.append("(?:.*/)?");
+				idx += 2;
+			} else if (glob.startsWith("**", idx)) {
+				sb.append(".*");
+				idx += 1;
+			} else if (c == '*') {
+				sb.append("[^/]*");
+			} else if (c == '?') {
+				sb.append("[^/]");
+			} else if (c == '{') {
+				sb.append("(?:");
+				braces++;
+			} else if (c == '}' && braces > 0) {
+				sb.append(")");
+				braces--;
+			} else if (c == ',' && braces > 0) {
+				sb.append("|");
+			} else {
+				sb.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		if (braces > 0) {
+			throw new IllegalArgumentException("unbalanced braces in JRE filter pattern " + glob);
+		}
+		return Pattern.compile(sb.toString());
+	}
+}
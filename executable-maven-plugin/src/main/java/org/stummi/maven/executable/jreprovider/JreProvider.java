@@ -3,6 +3,8 @@ package org.stummi.maven.executable.jreprovider;
 import java.io.IOException;
 
 import org.apache.maven.project.MavenProject;
+import org.stummi.maven.executable.BuildReport;
+import org.stummi.maven.executable.Fingerprint;
 import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
 
 /**
@@ -13,4 +15,19 @@ public interface JreProvider {
 	 * Adds the JRE provided by this implementation to the archive
 	 */
 	void addToArchive(MavenProject project, ArchiveBuilder builder) throws IOException;
+
+	/**
+	 * Adds the JRE provided by this implementation to the archive, recording
+	 * the time of preparation steps like downloads in the build report as sub
+	 * phases of the {@code jre} phase
+	 */
+	default void addToArchive(MavenProject project, ArchiveBuilder builder, BuildReport report) throws IOException {
+		addToArchive(project, builder);
+	}
+
+	/**
+	 * Adds the configuration and all files which influence the JRE added to
+	 * the archive to the given fingerprint
+	 */
+	void fingerprint(MavenProject project, Fingerprint fingerprint) throws IOException;
 }
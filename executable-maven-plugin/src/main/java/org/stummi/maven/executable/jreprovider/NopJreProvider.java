@@ -3,6 +3,7 @@ package org.stummi.maven.executable.jreprovider;
 import java.io.IOException;
 
 import org.apache.maven.project.MavenProject;
+import org.stummi.maven.executable.Fingerprint;
 import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
 
 public class NopJreProvider implements JreProvider {
@@ -10,4 +11,9 @@ public class NopJreProvider implements JreProvider {
 	public void addToArchive(MavenProject project, ArchiveBuilder builder) throws IOException {
 		// do nothing
 	}
+
+	@Override
+	public void fingerprint(MavenProject project, Fingerprint fingerprint) {
+		fingerprint.putValue("jre.provider", "none");
+	}
 }
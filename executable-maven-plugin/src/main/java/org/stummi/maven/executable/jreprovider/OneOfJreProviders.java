@@ -19,12 +19,16 @@ public class OneOfJreProviders {
 	@Parameter
 	private DownloadingJreProvider download;
 
+	@Parameter
+	private JlinkJreProvider jlink;
+
 	@Parameter
 	private NopJreProvider none;
 
 	private static final List<Function<OneOfJreProviders, JreProvider>> ACCESSORS = Arrays.asList( //
 			p -> p.system, //
 			p -> p.download, //
+			p -> p.jlink, //
 			p -> p.none //
 	);
 
@@ -7,6 +7,7 @@ import java.nio.file.Paths;
 
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
+import org.stummi.maven.executable.Fingerprint;
 import org.stummi.maven.executable.archiveBuilder.ArchiveBuilder;
 
 public class SystemJreProvider implements JreProvider {
@@ -15,6 +16,18 @@ public class SystemJreProvider implements JreProvider {
 
 	@Override
 	public void addToArchive(MavenProject ptoject, ArchiveBuilder builder) throws IOException {
+		builder.putPhysicalDirectoryRecursive("jre", findJreBase());
+	}
+
+	@Override
+	public void fingerprint(MavenProject project, Fingerprint fingerprint) throws IOException {
+		Path jreBase = findJreBase();
+		fingerprint.putValue("jre.provider", "system");
+		fingerprint.putValue("jre.system.path", jreBase.toAbsolutePath());
+		fingerprint.putDirectory(jreBase);
+	}
+
+	private Path findJreBase() throws IOException {
 		Path javaPath = Paths.get(javaHome != null ? javaHome : System.getProperty("java.home"));
 		Path jrePath = javaPath.resolve("jre");
 		Path jreBase = Files.isDirectory(jrePath) ? jrePath : javaPath;
@@ -24,7 +37,6 @@ public class SystemJreProvider implements JreProvider {
 		if (!Files.isExecutable(jreBase.resolve(binaryName))) {
 			throw new IOException("java.home seems to not point to a valid jre");
 		}
-
-		builder.putPhysicalDirectoryRecursive("jre", jreBase);
+		return jreBase;
 	}
 }
@@ -0,0 +1,305 @@
+package org.stummi.maven.executable.archiveBuilder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kamranzafar.jtar.TarEntry;
+import org.kamranzafar.jtar.TarInputStream;
+import org.stummi.maven.executable.Processes;
+
+public class NioTarArchiveBuilderTest {
+	private static final long ENTRY_TIME = 1_500_000_000L;
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	@Test
+	public void namesFittingTheNameField() throws IOException {
+		String name100 = name("", 100);
+		Path archive = archive(builder -> {
+			builder.putFile(name100, 3, content("abc"), false);
+			builder.putFile("short", 0, content(""), true);
+		});
+
+		List<TarEntry> entries = readWithJtar(archive);
+		assertEquals(2, entries.size());
+		assertEquals(name100, entries.get(0).getName());
+		assertEquals(3, entries.get(0).getSize());
+		assertEquals(0644, entries.get(0).getHeader().mode);
+		assertEquals("short", entries.get(1).getName());
+		assertEquals(0755, entries.get(1).getHeader().mode);
+		assertEquals(ENTRY_TIME, entries.get(1).getHeader().modTime);
+
+		assertArrayEquals("abc".getBytes(StandardCharsets.US_ASCII), Files.readAllBytes(extract(archive).resolve(name100)));
+	}
+
+	@Test
+	public void longNamesAreSplitIntoPrefix() throws IOException {
+		// 101 bytes, split at the only slash
+		String name101 = name("", 50) + "/" + name("", 50);
+		// a prefix of exactly 155 bytes, and a name of exactly 100 bytes
+		String prefix155 = name("", 60) + "/" + name("", 94);
+		String name255 = prefix155 + "/" + name("", 100);
+		String directory = name("", 80) + "/" + name("", 80);
+		Path archive = archive(builder -> {
+			builder.putDirectory(directory);
+			builder.putFile(name101, 1, content("a"), false);
+			builder.putFile(name255, 1, content("b"), false);
+		});
+
+		byte[] bytes = Files.readAllBytes(archive);
+		// no GNU long name entries are needed for these
+		assertFalse(new String(bytes, StandardCharsets.ISO_8859_1).contains("././@LongLink"));
+		// the directory, the header and content of the first file, and the
+		// header of the second one
+		assertEquals(prefix155, field(bytes, 3 * 512 + 345, 155));
+		assertEquals(name("", 100), field(bytes, 3 * 512, 100));
+
+		Path extracted = extract(archive);
+		assertTrue(Files.isDirectory(extracted.resolve(directory)));
+		assertArrayEquals(new byte[] { 'a' }, Files.readAllBytes(extracted.resolve(name101)));
+		assertArrayEquals(new byte[] { 'b' }, Files.readAllBytes(extracted.resolve(name255)));
+	}
+
+	@Test
+	public void namesNotFittingPrefixAreGnuLongNames() throws IOException {
+		// a prefix of 156 bytes, and a last component of 101 bytes
+		String longPrefix = name("", 156) + "/" + name("", 10);
+		String longComponent = "dir/" + name("", 101);
+		String longDirectory = name("", 150) + "/" + name("", 150);
+		Path archive = archive(builder -> {
+			builder.putFile(longPrefix, 1, content("a"), false);
+			builder.putFile(longComponent, 1, content("b"), false);
+			builder.putDirectory(longDirectory);
+			builder.putSymbolicLink("link", "x");
+		});
+
+		List<String> listing = list(archive);
+		assertEquals(4, listing.size());
+		assertTrue(listing.get(0), listing.get(0).endsWith(" " + longPrefix));
+		assertTrue(listing.get(1), listing.get(1).endsWith(" " + longComponent));
+		assertTrue(listing.get(2), listing.get(2).endsWith(" " + longDirectory + "/"));
+		assertTrue(listing.get(3), listing.get(3).endsWith(" link -> x"));
+
+		Path extracted = extract(archive);
+		assertArrayEquals(new byte[] { 'a' }, Files.readAllBytes(extracted.resolve(longPrefix)));
+		assertArrayEquals(new byte[] { 'b' }, Files.readAllBytes(extracted.resolve(longComponent)));
+		assertTrue(Files.isDirectory(extracted.resolve(longDirectory)));
+	}
+
+	@Test
+	public void longLinkTargets() throws IOException {
+		String target100 = name("", 100);
+		String target200 = name("", 99) + "/" + name("", 100);
+		Path archive = archive(builder -> {
+			builder.putFile(target100, 1, content("a"), false);
+			builder.putSymbolicLink("link100", target100);
+			builder.putSymbolicLink("link200", target200);
+			builder.putHardLink("hard/" + name("", 120), target100);
+		});
+
+		Path extracted = extract(archive);
+		assertEquals(target100, Files.readSymbolicLink(extracted.resolve("link100")).toString());
+		assertEquals(target200, Files.readSymbolicLink(extracted.resolve("link200")).toString());
+		assertArrayEquals(new byte[] { 'a' }, Files.readAllBytes(extracted.resolve("hard/" + name("", 120))));
+	}
+
+	@Test
+	public void modesOfPhysicalFiles() throws IOException {
+		assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+		Path file = temp.newFile("file").toPath();
+		Files.write(file, "content".getBytes(StandardCharsets.US_ASCII));
+		Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rwxr-x---"));
+		Path other = temp.newFile("other").toPath();
+		Files.setPosixFilePermissions(other, PosixFilePermissions.fromString("rw----r--"));
+		Path directory = temp.newFolder("directory").toPath();
+		Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx--x--x"));
+
+		Path archive = archive(builder -> {
+			builder.putPhysicalFile("file", file);
+			builder.putPhysicalFile("other", other);
+			builder.putPhysicalFile("directory", directory);
+		});
+
+		List<TarEntry> entries = readWithJtar(archive);
+		assertEquals(0750, entries.get(0).getHeader().mode);
+		assertEquals(7, entries.get(0).getSize());
+		assertEquals(Files.getLastModifiedTime(file).toMillis() / 1000, entries.get(0).getHeader().modTime);
+		assertEquals(0604, entries.get(1).getHeader().mode);
+		assertEquals(0711, entries.get(2).getHeader().mode);
+		assertTrue(entries.get(2).isDirectory());
+
+		List<String> listing = list(archive);
+		assertTrue(listing.get(0), listing.get(0).startsWith("-rwxr-x--- "));
+		assertTrue(listing.get(1), listing.get(1).startsWith("-rw----r-- "));
+		assertTrue(listing.get(2), listing.get(2).startsWith("drwx--x--x "));
+	}
+
+	/**
+	 * only the header is written, as the content of such an entry would take
+	 * too long
+	 */
+	@Test
+	public void sizesBeyondOctalFieldAreBase256() throws IOException {
+		long size = 8L * 1024 * 1024 * 1024 + 3;
+		Path archive = temp.getRoot().toPath().resolve("huge.tar");
+		try (FileChannel out = FileChannel.open(archive, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			NioTarArchiveBuilder builder = new NioTarArchiveBuilder(new UnclosedChannel(out), new UserData(), ENTRY_TIME);
+			try {
+				builder.putFile("huge", size, content(""), false);
+				fail("missing content not detected");
+			} catch (EOFException e) {
+				// the header is written before the content is read
+			}
+		}
+
+		byte[] header = Files.readAllBytes(archive);
+		assertEquals(512, header.length);
+		assertEquals((byte) 0x80, header[124]);
+		long decoded = 0;
+		for (int idx = 125; idx < 136; ++idx) {
+			decoded = decoded << 8 | header[idx] & 0xff;
+		}
+		assertEquals(size, decoded);
+
+		// tar lists the entry before failing on the missing content
+		assumeTrue(hasTar());
+		String output = Processes.run(Arrays.asList("tar", "-tvf", archive.toString()), null, 60).getOutput();
+		assertTrue(output, output.contains(" " + size + " "));
+	}
+
+	@Test
+	public void largestOctalSize() throws IOException {
+		long size = 077777777777L;
+		Path archive = temp.getRoot().toPath().resolve("octal.tar");
+		try (FileChannel out = FileChannel.open(archive, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			NioTarArchiveBuilder builder = new NioTarArchiveBuilder(new UnclosedChannel(out), new UserData(), ENTRY_TIME);
+			try {
+				builder.putFile("large", size, content(""), false);
+				fail("missing content not detected");
+			} catch (EOFException e) {
+				// the header is written before the content is read
+			}
+		}
+		byte[] header = Files.readAllBytes(archive);
+		assertEquals("77777777777", field(header, 124, 12));
+	}
+
+	@FunctionalInterface
+	private interface Content {
+		void writeTo(ArchiveBuilder builder) throws IOException;
+	}
+
+	/**
+	 * keeps the file open after the builder failed, so the header written so
+	 * far can be checked
+	 */
+	private static class UnclosedChannel implements WritableByteChannel {
+		private final WritableByteChannel out;
+
+		UnclosedChannel(WritableByteChannel out) {
+			this.out = out;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			return out.write(src);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return out.isOpen();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private Path archive(Content content) throws IOException {
+		Path archive = Files.createTempFile(temp.getRoot().toPath(), "archive", ".tar");
+		try (ArchiveBuilder builder = new NioTarArchiveBuilder(FileChannel.open(archive, StandardOpenOption.WRITE), new UserData(), ENTRY_TIME)) {
+			content.writeTo(builder);
+		}
+		assertEquals(0, Files.size(archive) % 512);
+		return archive;
+	}
+
+	private static InputStream content(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * a name of the given length, unique for each length
+	 */
+	private static String name(String prefix, int length) {
+		StringBuilder sb = new StringBuilder(prefix);
+		for (int idx = 0; sb.length() < length; ++idx) {
+			sb.append((char) ('a' + (idx + length) % 26));
+		}
+		return sb.toString();
+	}
+
+	private static String field(byte[] header, int offset, int length) {
+		int end = offset;
+		while (end < offset + length && header[end] != 0) {
+			++end;
+		}
+		return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	private static List<TarEntry> readWithJtar(Path archive) throws IOException {
+		List<TarEntry> entries = new ArrayList<>();
+		try (TarInputStream in = new TarInputStream(Files.newInputStream(archive))) {
+			TarEntry entry;
+			while ((entry = in.getNextEntry()) != null) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	private Path extract(Path archive) throws IOException {
+		assumeTrue(hasTar());
+		Path directory = temp.newFolder().toPath();
+		Processes.run(Arrays.asList("tar", "-xf", archive.toString(), "-C", directory.toString()));
+		return directory;
+	}
+
+	private static List<String> list(Path archive) throws IOException {
+		assumeTrue(hasTar());
+		return Arrays.asList(Processes.run(Arrays.asList("tar", "-tvf", archive.toString())).split("\n"));
+	}
+
+	private static boolean hasTar() {
+		try {
+			return Processes.run(Arrays.asList("tar", "--version"), null, 10).getExitCode() == 0;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,245 @@
+package org.stummi.maven.executable.compression;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class ParallelGzipOutputStreamTest {
+	private static final int BLOCK_SIZE = ParallelGzipOutputStream.DICTIONARY_SIZE;
+
+	private static final int[] SIZES = { 0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 2 * BLOCK_SIZE, 2 * BLOCK_SIZE + 1, 20 * BLOCK_SIZE + 123 };
+
+	@Test
+	public void roundTripsRandomData() throws IOException {
+		for (int size : SIZES) {
+			assertRoundTrip(randomData(size, size));
+		}
+	}
+
+	@Test
+	public void roundTripsCompressibleData() throws IOException {
+		for (int size : SIZES) {
+			assertRoundTrip(compressibleData(size, size));
+		}
+	}
+
+	@Test
+	public void roundTripsSingleByteWrites() throws IOException {
+		byte[] data = compressibleData(3 * BLOCK_SIZE + 7, 1);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (OutputStream out = new ParallelGzipOutputStream(compressed, 2, BLOCK_SIZE)) {
+			for (byte b : data) {
+				out.write(b);
+			}
+		}
+		assertArrayEquals(data, gunzip(compressed.toByteArray()));
+	}
+
+	@Test
+	public void roundTripsWithEveryLevel() throws IOException {
+		byte[] data = compressibleData(3 * BLOCK_SIZE + 7, 2);
+		for (int level = Deflater.NO_COMPRESSION; level <= Deflater.BEST_COMPRESSION; ++level) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try (OutputStream out = new ParallelGzipOutputStream(compressed, 2, BLOCK_SIZE, level)) {
+				out.write(data);
+			}
+			assertArrayEquals("level " + level, data, gunzip(compressed.toByteArray()));
+		}
+	}
+
+	/**
+	 * the shards of a layer are written one after the other by a single
+	 * thread, so a stream waiting for the pool depends on the blocks of the
+	 * others being written by it
+	 */
+	@Test(timeout = 60_000)
+	public void streamsWrittenByOneThreadShareSmallPool() throws IOException {
+		try (CompressionPool pool = new CompressionPool(2, 2)) {
+			int streamCount = 8;
+			List<ByteArrayOutputStream> compressed = new ArrayList<>();
+			List<OutputStream> streams = new ArrayList<>();
+			List<byte[]> data = new ArrayList<>();
+			for (int idx = 0; idx < streamCount; ++idx) {
+				compressed.add(new ByteArrayOutputStream());
+				streams.add(new ParallelGzipOutputStream(compressed.get(idx), pool, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION));
+				data.add(idx % 2 == 0 ? randomData(10 * BLOCK_SIZE + idx, idx) : compressibleData(10 * BLOCK_SIZE + idx, idx));
+			}
+
+			int chunk = BLOCK_SIZE / 3;
+			for (int off = 0; off < 10 * BLOCK_SIZE + streamCount; off += chunk) {
+				for (int idx = 0; idx < streamCount; ++idx) {
+					byte[] d = data.get(idx);
+					if (off < d.length) {
+						streams.get(idx).write(d, off, Math.min(chunk, d.length - off));
+					}
+				}
+			}
+			for (OutputStream stream : streams) {
+				stream.close();
+			}
+
+			for (int idx = 0; idx < streamCount; ++idx) {
+				assertArrayEquals(data.get(idx), gunzip(compressed.get(idx).toByteArray()));
+			}
+		}
+	}
+
+	@Test(timeout = 60_000)
+	public void streamsWrittenConcurrentlyShareSmallPool() throws Exception {
+		ExecutorService writers = Executors.newFixedThreadPool(6);
+		try (CompressionPool pool = new CompressionPool(2, 3)) {
+			List<Future<?>> results = new ArrayList<>();
+			for (int idx = 0; idx < 12; ++idx) {
+				byte[] data = idx % 2 == 0 ? randomData(15 * BLOCK_SIZE + idx, idx) : compressibleData(15 * BLOCK_SIZE + idx, idx);
+				results.add(writers.submit(() -> {
+					ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+					try (OutputStream out = new ParallelGzipOutputStream(compressed, pool, BLOCK_SIZE, Deflater.BEST_SPEED)) {
+						int chunk = 1000;
+						for (int off = 0; off < data.length; off += chunk) {
+							out.write(data, off, Math.min(chunk, data.length - off));
+						}
+					}
+					assertArrayEquals(data, gunzip(compressed.toByteArray()));
+					return null;
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+		} finally {
+			writers.shutdownNow();
+		}
+	}
+
+	@Test(timeout = 60_000)
+	public void workerFailurePropagatesAndReleasesPool() throws IOException {
+		try (CompressionPool pool = new CompressionPool(2, 2)) {
+			// the level is only checked by the deflater on the worker thread
+			OutputStream out = new ParallelGzipOutputStream(new ByteArrayOutputStream(), pool, BLOCK_SIZE, 42);
+			try {
+				out.write(randomData(10 * BLOCK_SIZE, 1));
+				out.close();
+				fail("invalid level accepted");
+			} catch (IOException e) {
+				assertEquals("failed to compress block", e.getMessage());
+				assertTrue(e.getCause() instanceof IllegalArgumentException);
+			}
+			try {
+				out.close();
+				fail("close after failure succeeded");
+			} catch (IOException e) {
+				assertTrue(e.getCause() instanceof IllegalArgumentException);
+			}
+
+			// all blocks of the failed stream are given back to the pool
+			byte[] data = randomData(10 * BLOCK_SIZE, 2);
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try (OutputStream other = new ParallelGzipOutputStream(compressed, pool, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION)) {
+				other.write(data);
+			}
+			assertArrayEquals(data, gunzip(compressed.toByteArray()));
+		}
+	}
+
+	@Test
+	public void workerFailurePropagatesFromClose() throws IOException {
+		OutputStream out = new ParallelGzipOutputStream(new ByteArrayOutputStream(), 2, BLOCK_SIZE, 42);
+		out.write(randomData(BLOCK_SIZE / 2, 1));
+		try {
+			out.close();
+			fail("invalid level accepted");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void writeAfterCloseFails() throws IOException {
+		OutputStream out = new ParallelGzipOutputStream(new ByteArrayOutputStream(), 1, BLOCK_SIZE);
+		out.close();
+		out.write(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsBlocksSmallerThanDictionary() throws IOException {
+		new ParallelGzipOutputStream(new ByteArrayOutputStream(), 1, BLOCK_SIZE - 1);
+	}
+
+	private static void assertRoundTrip(byte[] data) throws IOException {
+		for (int threads : new int[] { 1, 3 }) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try (OutputStream out = new ParallelGzipOutputStream(compressed, threads, BLOCK_SIZE)) {
+				out.write(data);
+			}
+			byte[] gzip = compressed.toByteArray();
+			String message = data.length + " bytes with " + threads + " threads";
+			assertArrayEquals(message, data, gunzip(gzip));
+
+			// GZIPInputStream checks the trailer too, but only if it reads
+			// to the end of the stream
+			ByteBuffer trailer = ByteBuffer.wrap(gzip, gzip.length - 8, 8).order(ByteOrder.LITTLE_ENDIAN);
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			assertEquals(message, (int) crc.getValue(), trailer.getInt());
+			assertEquals(message, data.length, trailer.getInt());
+		}
+	}
+
+	private static byte[] gunzip(byte[] gzip) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+			byte[] buffer = new byte[8192];
+			int len;
+			while ((len = in.read(buffer)) > 0) {
+				result.write(buffer, 0, len);
+			}
+		}
+		return result.toByteArray();
+	}
+
+	private static byte[] randomData(int length, long seed) {
+		byte[] data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	/**
+	 * text like data, with repetitions across block boundaries
+	 */
+	private static byte[] compressibleData(int length, long seed) {
+		Random random = new Random(seed);
+		String[] words = new String[64];
+		for (int idx = 0; idx < words.length; ++idx) {
+			words[idx] = Long.toString(random.nextLong() & 0xffffff, 36);
+		}
+		byte[] data = new byte[length];
+		int pos = 0;
+		while (pos < length) {
+			byte[] word = (words[random.nextInt(words.length)] + ' ').getBytes();
+			int len = Math.min(word.length, length - pos);
+			System.arraycopy(word, 0, data, pos, len);
+			pos += len;
+		}
+		return data;
+	}
+}
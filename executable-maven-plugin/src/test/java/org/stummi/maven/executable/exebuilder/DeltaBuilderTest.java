@@ -0,0 +1,182 @@
+package org.stummi.maven.executable.exebuilder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.apache.maven.project.MavenProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.stummi.maven.executable.Processes;
+import org.stummi.maven.executable.Processes.Result;
+import org.stummi.maven.executable.compression.NoneCodec;
+import org.stummi.maven.executable.jreprovider.NopJreProvider;
+
+/**
+ * Creates deltas between executables and applies them with the wrapper of the
+ * base executable
+ */
+public class DeltaBuilderTest {
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	private Path directory;
+	private Path base;
+	private byte[] baseBytes;
+
+	@Before
+	public void setUp() throws IOException {
+		assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+		directory = temp.getRoot().toPath();
+
+		// an uncompressed payload, so changes of the input stay local
+		Path application = directory.resolve("app.jar");
+		Files.write(application, random(1024 * 1024 + 17, 1));
+		MavenProject project = new MavenProject();
+		project.setGroupId("org.stummi.maven");
+		project.setArtifactId("delta");
+		project.setVersion("1.0");
+		project.setName("delta");
+		PosixExeBuilder exeBuilder = new PosixExeBuilder();
+		exeBuilder.setCodec(new NoneCodec());
+		base = directory.resolve("base");
+		exeBuilder.createExe(project, application, base, new NopJreProvider(), "app.jar");
+		baseBytes = Files.readAllBytes(base);
+	}
+
+	@Test
+	public void changesInTheMiddleAndAtTheTail() throws IOException {
+		byte[] targetBytes = Arrays.copyOf(baseBytes, baseBytes.length + 777);
+		System.arraycopy(random(3000, 2), 0, targetBytes, baseBytes.length / 2 + 5, 3000);
+		System.arraycopy(random(777, 3), 0, targetBytes, baseBytes.length, 777);
+		assertNotEquals(0, targetBytes.length % AbstractExeBuilder.LAYER_ALIGNMENT);
+		Path target = write("target", targetBytes);
+
+		Path delta = delta(target);
+		// only the changed blocks and the tail are stored
+		assertTrue(Files.size(delta) < targetBytes.length / 4);
+
+		Path output = directory.resolve("output");
+		Result result = applyDelta(base, delta, output);
+		assertEquals(result.getOutput(), 0, result.getExitCode());
+		assertArrayEquals(targetBytes, Files.readAllBytes(output));
+		assertTrue(Files.isExecutable(output));
+	}
+
+	@Test
+	public void shorterUnalignedTarget() throws IOException {
+		byte[] targetBytes = Arrays.copyOf(baseBytes, baseBytes.length - 5000);
+		System.arraycopy(random(100, 4), 0, targetBytes, 100_000, 100);
+		Path target = write("target", targetBytes);
+
+		Path output = directory.resolve("output");
+		Result result = applyDelta(base, delta(target), output);
+		assertEquals(result.getOutput(), 0, result.getExitCode());
+		assertArrayEquals(targetBytes, Files.readAllBytes(output));
+	}
+
+	@Test
+	public void identicalInputs() throws IOException {
+		Path target = write("target", baseBytes);
+
+		Path delta = delta(target);
+		// nothing but the header
+		assertTrue(Files.size(delta) <= AbstractExeBuilder.LAYER_ALIGNMENT);
+
+		Path output = directory.resolve("output");
+		Result result = applyDelta(base, delta, output);
+		assertEquals(result.getOutput(), 0, result.getExitCode());
+		assertArrayEquals(baseBytes, Files.readAllBytes(output));
+	}
+
+	@Test
+	public void replacesTheExecutableItselfByDefault() throws IOException {
+		byte[] targetBytes = Arrays.copyOf(baseBytes, baseBytes.length + 1);
+		Path target = write("target", targetBytes);
+		Path delta = delta(target);
+
+		Result result = applyDelta(base, delta, null);
+		assertEquals(result.getOutput(), 0, result.getExitCode());
+		assertArrayEquals(targetBytes, Files.readAllBytes(base));
+	}
+
+	@Test
+	public void corruptedDeltaIsRejectedByTargetHash() throws IOException {
+		byte[] targetBytes = Arrays.copyOf(baseBytes, baseBytes.length + 777);
+		System.arraycopy(random(777, 3), 0, targetBytes, baseBytes.length, 777);
+		Path delta = delta(write("target", targetBytes));
+		byte[] deltaBytes = Files.readAllBytes(delta);
+		// the last byte is stored data
+		deltaBytes[deltaBytes.length - 1] ^= 1;
+		Files.write(delta, deltaBytes);
+
+		Path output = directory.resolve("output");
+		Result result = applyDelta(base, delta, output);
+		assertNotEquals(0, result.getExitCode());
+		assertTrue(result.getOutput(), result.getOutput().contains("does not match its hash"));
+		assertFalse(Files.exists(output));
+		assertNoTemporaryFiles();
+	}
+
+	@Test
+	public void wrongBaseIsRejected() throws IOException {
+		byte[] otherBytes = baseBytes.clone();
+		otherBytes[otherBytes.length / 2] ^= 1;
+		Path other = write("other", otherBytes);
+		byte[] targetBytes = Arrays.copyOf(baseBytes, baseBytes.length + 1);
+		Path delta = delta(write("target", targetBytes));
+
+		Path output = directory.resolve("output");
+		Result result = applyDelta(other, delta, output);
+		assertNotEquals(0, result.getExitCode());
+		assertTrue(result.getOutput(), result.getOutput().contains("does not apply to this version"));
+		assertFalse(Files.exists(output));
+		assertNoTemporaryFiles();
+	}
+
+	private Path delta(Path target) throws IOException {
+		Path delta = directory.resolve("delta");
+		new DeltaBuilder(base, target).write(delta);
+		String header = new String(Files.readAllBytes(delta), "US-ASCII");
+		assertTrue(header.startsWith("executable-delta 1\n"));
+		return delta;
+	}
+
+	private static Result applyDelta(Path executable, Path delta, Path output) throws IOException {
+		return Processes.run(output != null ? Arrays.asList(executable.toString(), "--wrapper-apply-delta", delta.toString(), output.toString())
+				: Arrays.asList(executable.toString(), "--wrapper-apply-delta", delta.toString()), null, 120);
+	}
+
+	private Path write(String name, byte[] data) throws IOException {
+		Path file = directory.resolve(name);
+		Files.write(file, data);
+		Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rwxr-xr-x"));
+		return file;
+	}
+
+	private void assertNoTemporaryFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			assertFalse(files.anyMatch(file -> file.getFileName().toString().startsWith("output.")));
+		}
+	}
+
+	private static byte[] random(int length, long seed) {
+		byte[] data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+}
@@ -0,0 +1,148 @@
+package org.stummi.maven.executable.exebuilder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.stummi.maven.executable.CacheLocks;
+import org.stummi.maven.executable.exebuilder.LayerCache.CachedLayer;
+import org.stummi.maven.executable.exebuilder.LayerCache.LayerInfo;
+
+public class LayerCacheTest {
+	private static final FileTime EXPIRED = FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(40));
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	private Path directory;
+	private LayerCache cache;
+
+	@Before
+	public void setUp() {
+		directory = temp.getRoot().toPath().resolve("layers");
+		cache = new LayerCache(directory);
+	}
+
+	@Test
+	public void reusesCachedLayer() throws IOException {
+		CachedLayer first = cache.get("a", out -> write(out, "content"));
+		CachedLayer second = cache.get("a", out -> {
+			throw new AssertionError("cached layer written again");
+		});
+
+		assertEquals(first, second);
+		assertEquals(7, second.getSize());
+		assertEquals(new LayerInfo(7, 1, "hash"), second.getInfo());
+		assertNoTemporaryFiles();
+	}
+
+	@Test
+	public void evictsUnusedLayersWithTheirLockFile() throws IOException {
+		cache.get("old", out -> write(out, "old"));
+		Files.setLastModifiedTime(directory.resolve("old.layer"), EXPIRED);
+
+		cache.get("new", out -> write(out, "new"));
+
+		try (Stream<Path> files = Files.list(directory)) {
+			assertFalse(files.anyMatch(file -> file.getFileName().toString().startsWith("old")));
+		}
+		assertTrue(Files.exists(directory.resolve("new.lock")));
+	}
+
+	@Test(timeout = 60_000)
+	public void keepsLayersInUse() throws Exception {
+		cache.get("old", out -> write(out, "old"));
+		Files.setLastModifiedTime(directory.resolve("old.layer"), EXPIRED);
+
+		// another build holding the lock of the layer, as if it was about to
+		// use it
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch evicted = new CountDownLatch(1);
+		ExecutorService other = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> user = other.submit(() -> CacheLocks.withLock(directory.resolve("old.lock"), () -> {
+				locked.countDown();
+				await(evicted);
+				return null;
+			}));
+			locked.await();
+			cache.get("new", out -> write(out, "new"));
+			evicted.countDown();
+			user.get();
+		} finally {
+			other.shutdownNow();
+		}
+
+		assertTrue(Files.exists(directory.resolve("old.layer")));
+		assertTrue(Files.exists(directory.resolve("old.sha256")));
+		assertTrue(Files.exists(directory.resolve("old.info")));
+		assertTrue(Files.exists(directory.resolve("old.lock")));
+	}
+
+	@Test(timeout = 60_000)
+	public void waitingBuildRecreatesEvictedLayer() throws Exception {
+		cache.get("old", out -> write(out, "old"));
+		Files.setLastModifiedTime(directory.resolve("old.layer"), EXPIRED);
+
+		// a build asking for the layer while it is evicted creates it again,
+		// under a new lock file
+		Path lockFile = directory.resolve("old.lock");
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch evicted = new CountDownLatch(1);
+		ExecutorService other = Executors.newSingleThreadExecutor();
+		try {
+			Future<Boolean> eviction = other.submit(() -> CacheLocks.tryWithLock(lockFile, () -> {
+				locked.countDown();
+				await(evicted);
+				Files.delete(directory.resolve("old.layer"));
+				Files.delete(lockFile);
+				return null;
+			}));
+			locked.await();
+			evicted.countDown();
+			CachedLayer layer = cache.get("old", out -> write(out, "again"));
+			assertTrue(eviction.get());
+			assertEquals(5, layer.getSize());
+		} finally {
+			other.shutdownNow();
+		}
+		assertTrue(Files.exists(lockFile));
+	}
+
+	private static LayerInfo write(WritableByteChannel out, String content) throws IOException {
+		out.write(ByteBuffer.wrap(content.getBytes("US-ASCII")));
+		return new LayerInfo(content.length(), 1, "hash");
+	}
+
+	private static void await(CountDownLatch latch) throws IOException {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void assertNoTemporaryFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			assertFalse(files.anyMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+		}
+	}
+}
@@ -0,0 +1,272 @@
+package org.stummi.maven.executable.jreprovider;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.stummi.maven.executable.Checksums;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class DownloadCacheTest {
+	private static final String PATH = "/jre.tar.gz";
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	private HttpServer server;
+	private String url;
+	private Path directory;
+	private DownloadCache cache;
+
+	/**
+	 * the file served by the stand-in server, and its ETag
+	 */
+	private volatile byte[] content;
+	private volatile String etag = "\"v1\"";
+
+	private final List<Request> requests = Collections.synchronizedList(new ArrayList<>());
+
+	private static class Request {
+		final String method;
+		final String range;
+		final String ifRange;
+		final String ifNoneMatch;
+		final int status;
+
+		Request(HttpExchange exchange, int status) {
+			this.method = exchange.getRequestMethod();
+			this.range = exchange.getRequestHeaders().getFirst("Range");
+			this.ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+			this.ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+			this.status = status;
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		content = randomBytes(300_000, 1);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext(PATH, this::serve);
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + PATH;
+		directory = temp.getRoot().toPath().resolve("downloads");
+		cache = new DownloadCache(directory);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	/**
+	 * a minimal server supporting conditional and range requests the way
+	 * common download servers do
+	 */
+	private void serve(HttpExchange exchange) throws IOException {
+		byte[] data = content;
+		String currentEtag = etag;
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		exchange.getResponseHeaders().set("ETag", currentEtag);
+
+		int status;
+		int from = 0;
+		if (currentEtag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			status = 304;
+		} else if (range != null && (ifRange == null || ifRange.equals(currentEtag))) {
+			from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+			if (from >= data.length) {
+				status = 416;
+				exchange.getResponseHeaders().set("Content-Range", "bytes */" + data.length);
+			} else {
+				status = 206;
+				exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + (data.length - 1) + "/" + data.length);
+			}
+		} else {
+			status = 200;
+		}
+		requests.add(new Request(exchange, status));
+
+		boolean body = (status == 200 || status == 206) && !exchange.getRequestMethod().equals("HEAD");
+		exchange.sendResponseHeaders(status, body ? data.length - from : -1);
+		if (body) {
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(data, from, data.length - from);
+			}
+		}
+		exchange.close();
+	}
+
+	@Test
+	public void freshDownload() throws IOException {
+		DownloadCache.Download download = cache.get(url, checksums(content));
+		Path file = download.getFile();
+
+		assertTrue(download.isVerified());
+		assertArrayEquals(content, Files.readAllBytes(file));
+		assertEquals(1, requests.size());
+		assertEquals(200, requests.get(0).status);
+		assertNull(requests.get(0).range);
+		assertFalse(Files.exists(part(file)));
+	}
+
+	@Test
+	public void cachedDownloadWithChecksumIsNotRequestedAgain() throws IOException {
+		DownloadCache.Download first = cache.get(url, checksums(content));
+		DownloadCache.Download second = cache.get(url, checksums(content));
+
+		assertEquals(first.getFile(), second.getFile());
+		// a cached file may have been corrupted since
+		assertFalse(second.isVerified());
+		assertEquals(1, requests.size());
+	}
+
+	@Test
+	public void resumesTruncatedPartialFile() throws IOException {
+		Path file = cache.path(url, checksums(content));
+		writePart(file, Arrays.copyOf(content, 100_000), etag);
+
+		cache.get(url, checksums(content));
+
+		assertArrayEquals(content, Files.readAllBytes(file));
+		assertEquals(1, requests.size());
+		assertEquals(206, requests.get(0).status);
+		assertEquals("bytes=100000-", requests.get(0).range);
+		assertEquals(etag, requests.get(0).ifRange);
+		assertFalse(Files.exists(part(file)));
+	}
+
+	@Test
+	public void restartsWhenRangeIsNotSatisfiable() throws IOException {
+		Path file = cache.path(url, checksums(content));
+		byte[] tooLong = Arrays.copyOf(content, content.length + 10);
+		writePart(file, tooLong, etag);
+
+		cache.get(url, checksums(content));
+
+		assertArrayEquals(content, Files.readAllBytes(file));
+		assertEquals(2, requests.size());
+		assertEquals(416, requests.get(0).status);
+		assertEquals(200, requests.get(1).status);
+		assertNull(requests.get(1).range);
+	}
+
+	@Test
+	public void restartsWhenFileChangedSincePartialDownload() throws IOException {
+		Path file = cache.path(url, checksums(content));
+		writePart(file, Arrays.copyOf(randomBytes(content.length, 2), 100_000), "\"v0\"");
+
+		cache.get(url, checksums(content));
+
+		assertArrayEquals(content, Files.readAllBytes(file));
+		assertEquals(1, requests.size());
+		assertEquals("\"v0\"", requests.get(0).ifRange);
+		assertEquals(200, requests.get(0).status);
+	}
+
+	@Test
+	public void revalidatesWithEtag() throws IOException {
+		Path first = cache.get(url, null).getFile();
+		Path second = cache.get(url, null).getFile();
+
+		assertEquals(first, second);
+		assertArrayEquals(content, Files.readAllBytes(second));
+		assertEquals(2, requests.size());
+		assertEquals("HEAD", requests.get(1).method);
+		assertEquals(etag, requests.get(1).ifNoneMatch);
+		assertEquals(304, requests.get(1).status);
+	}
+
+	@Test
+	public void downloadsAgainWhenEtagChanged() throws IOException {
+		cache.get(url, null);
+		content = randomBytes(200_000, 3);
+		etag = "\"v2\"";
+
+		Path file = cache.get(url, null).getFile();
+
+		assertArrayEquals(content, Files.readAllBytes(file));
+		assertEquals(3, requests.size());
+		assertEquals("HEAD", requests.get(1).method);
+		assertEquals(200, requests.get(1).status);
+		assertEquals("GET", requests.get(2).method);
+	}
+
+	@Test
+	public void checksumMismatchRemovesDownload() throws IOException {
+		Map<String, String> wrong = checksums(randomBytes(10, 4));
+		Path file = cache.path(url, wrong);
+		try {
+			cache.get(url, wrong);
+			fail("download with wrong checksum accepted");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("does not equals expected"));
+		}
+
+		assertFalse(Files.exists(file));
+		assertFalse(Files.exists(part(file)));
+		assertFalse(Files.exists(file.resolveSibling(part(file).getFileName() + ".properties")));
+	}
+
+	@Test
+	public void checksumKeyIgnoresCaseAndWhitespace() throws IOException {
+		String sha256 = checksums(content).get("sha-256");
+		assertEquals("sha256-" + sha256, cache.path(url, Collections.singletonMap("SHA-256", " " + sha256.toUpperCase() + "\n")).getFileName().toString());
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsChecksumWhichIsNoHex() throws IOException {
+		cache.path(url, Collections.singletonMap("sha-256", "../../../etc/passwd"));
+	}
+
+	private static Map<String, String> checksums(byte[] data) throws IOException {
+		return Collections.singletonMap("sha-256", Checksums.toHex(Checksums.newDigest("SHA-256").digest(data)));
+	}
+
+	private static byte[] randomBytes(int length, long seed) {
+		byte[] data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	private static Path part(Path file) {
+		return file.resolveSibling(file.getFileName() + ".part");
+	}
+
+	/**
+	 * leaves a partial download behind, like an interrupted build does
+	 */
+	private void writePart(Path file, byte[] data, String partEtag) throws IOException {
+		Files.createDirectories(directory);
+		Files.write(part(file), data);
+		Properties meta = new Properties();
+		meta.setProperty("url", url);
+		meta.setProperty("etag", partEtag);
+		try (OutputStream out = Files.newOutputStream(file.resolveSibling(part(file).getFileName() + ".properties"))) {
+			meta.store(out, null);
+		}
+	}
+}